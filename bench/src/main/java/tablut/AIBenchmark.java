@@ -0,0 +1,96 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Microbenchmarks of the AI: static evaluation, and a whole fixed-depth
+ *  search starting from empty tables, on the positions of
+ *  Perft.REFERENCE.
+ *  @author Citlalli Villarreal
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AIBenchmark {
+
+    /** Index in Perft.REFERENCE of the position to use. */
+    @Param({ "0", "1", "2", "3", "4" })
+    public int position;
+
+    /** Set up a controller holding the position, and an AI for the side
+     *  to move. */
+    @Setup
+    public void setup() {
+        Board board =
+            Perft.position((String) Perft.REFERENCE[position][0]);
+        Controller controller =
+            new Controller(new NullView(), null, new SilentReporter(),
+                           new TextPlayer(), new AI(), false);
+        controller.board().copy(board);
+        _board = controller.board();
+        _ai = new AI(board.turn(), controller);
+    }
+
+    /** Score the position as the AI does at each leaf. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int staticScore() {
+        return _evaluator.score(_board);
+    }
+
+    /** Search the position to the AI's fixed depth, with empty tables
+     *  (see EmptyTables). */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Move findMove(EmptyTables tables) {
+        return _ai.findMove();
+    }
+
+    /** State whose only job is to clear the AI's tables before each call
+     *  of findMove, so every search does the same work.  Kept apart from
+     *  AIBenchmark so that staticScore is not timed around it. */
+    @State(Scope.Thread)
+    public static class EmptyTables {
+        /** Clear the tables of BENCH's AI. */
+        @Setup(Level.Invocation)
+        public void clearTables(AIBenchmark bench) {
+            bench._ai.clearTables();
+        }
+    }
+
+    /** A Reporter that discards everything. */
+    private static class SilentReporter implements Reporter {
+        @Override
+        public void reportError(String format, Object... args) {
+        }
+
+        @Override
+        public void reportNote(String format, Object... args) {
+        }
+
+        @Override
+        public void reportMove(Move move) {
+        }
+    }
+
+    /** The evaluator used by default. */
+    private final Evaluator _evaluator = new FeatureEvaluator();
+    /** The position being measured. */
+    private Board _board;
+    /** The AI doing the searching. */
+    private AI _ai;
+}
@@ -0,0 +1,91 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static tablut.Board.MAX_MOVES;
+
+/** Microbenchmarks of the Board operations used by the search, on the
+ *  positions of Perft.REFERENCE (the initial position and four mid-game
+ *  positions from the test scripts).
+ *  @author Citlalli Villarreal
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    /** Index in Perft.REFERENCE of the position to use. */
+    @Param({ "0", "1", "2", "3", "4" })
+    public int position;
+
+    /** Set up the position and its legal moves. */
+    @Setup
+    public void setup() {
+        _board = Perft.position((String) Perft.REFERENCE[position][0]);
+        _numMoves = _board.legalMoves(_board.turn(), _legalMoves);
+    }
+
+    /** Copy the whole position, as each search does once. */
+    @Benchmark
+    public Board copy() {
+        _scratch.copy(_board);
+        return _scratch;
+    }
+
+    /** Generate the legal moves of the side to move. */
+    @Benchmark
+    public int legalMoves() {
+        return _board.legalMoves(_board.turn(), _moves);
+    }
+
+    /** Make and undo every legal move in turn.  Divide by the number of
+     *  legal moves for the cost of one make/undo pair. */
+    @Benchmark
+    public long makeUndo() {
+        long keys = 0;
+        for (int k = 0; k < _numMoves; k += 1) {
+            _board.makeMove(Move.unpack(_legalMoves[k]));
+            keys += _board.hashKey();
+            _board.undo();
+        }
+        return keys;
+    }
+
+    /** Encode the position as a string. */
+    @Benchmark
+    public String encodedBoard() {
+        return _board.encodedBoard();
+    }
+
+    /** Find the king. */
+    @Benchmark
+    public Square kingPosition() {
+        return _board.kingPosition();
+    }
+
+    /** The position being measured. */
+    private Board _board;
+    /** Target of copy. */
+    private final Board _scratch = new Board();
+    /** Move buffer for legalMoves. */
+    private final int[] _moves = new int[MAX_MOVES];
+    /** The legal moves in _board. */
+    private final int[] _legalMoves = new int[MAX_MOVES];
+    /** Number of legal moves in _board. */
+    private int _numMoves;
+}
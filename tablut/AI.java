@@ -1,7 +1,16 @@
 package tablut;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.lang.Math.*;
 
@@ -14,15 +23,18 @@ import static tablut.Piece.*;
 class AI extends Player {
 
     /**
-     * A position-score magnitude indicating a win (for white if positive,
-     * black if negative).
+     * A position-score magnitude indicating a win (for the side to move
+     * if positive, its opponent if negative).  The search scores a win
+     * PLY moves from its root as WINNING_VALUE - PLY, so that it prefers
+     * quicker wins and slower losses.
      */
     private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
     /**
-     * A position-score magnitude indicating a forced win in a subsequent
-     * move.  This differs from WINNING_VALUE to avoid putting off wins.
+     * The least score magnitude indicating a forced win or loss.  It is
+     * below WINNING_VALUE by more than the longest path a search can take
+     * (MAX_SEARCH_DEPTH plus QUIESCENCE_DEPTH moves).
      */
-    private static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
+    private static final int WILL_WIN_VALUE = WINNING_VALUE - 100;
     /**
      * A magnitude greater than a normal value.
      */
@@ -48,14 +60,78 @@ class AI extends Player {
         return new AI(piece, controller);
     }
 
+    /** Find a move (see startSearch), waiting for the result.  Then, if
+     *  my controller asks for pondering and my opponent is manual, start
+     *  thinking about the reply I expect while my opponent thinks (see
+     *  startPondering). */
     @Override
     String myMove() {
-        findMove();
-        Move move = _lastFoundMove;
+        Move move;
+        try {
+            move = startSearch().get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+        _controller.recordStats(_lastStats);
         _controller.reportMove(move);
+        startPondering(move);
         return move.toString();
     }
 
+    @Override
+    void stop() {
+        stopPondering(null);
+    }
+
+    @Override
+    void cancelMove() {
+        _cancel.set(true);
+    }
+
+    /** Start finding a move (see findMove) from the current position, on
+     *  my controller's search pool if it has one and otherwise on a new
+     *  thread, and return the pending result.  The search stops early,
+     *  settling for the best move found so far, if cancelled (see
+     *  cancelMove) or when my controller's search deadline passes.  The
+     *  deadline counts from now, so that time spent waiting for a busy
+     *  pool counts against it, and a search that waits past it only
+     *  glances at the position.  Cancelling the result itself (see
+     *  Future.cancel) also stops the search, but discards its move. */
+    Future<Move> startSearch() {
+        _cancel.set(false);
+        long limit = _controller.searchDeadline();
+        boolean hardTimed = limit > 0;
+        long hardDeadline = System.nanoTime() + limit * NANOS_PER_MILLI;
+        Search task = new Search(() -> {
+            return findMove(hardTimed, hardDeadline);
+        });
+        ExecutorService pool = _controller.searchPool();
+        if (pool == null) {
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            pool.execute(task);
+        }
+        return task;
+    }
+
+    /** A pending search whose cancellation stops the search itself, so
+     *  that it stops using its thread soon after. */
+    private class Search extends FutureTask<Move> {
+
+        /** A search that runs SEARCH. */
+        Search(Callable<Move> search) {
+            super(search);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelMove();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
     @Override
     boolean isManual() {
         return false;
@@ -63,20 +139,436 @@ class AI extends Player {
 
     /**
      * Return a move for me from the current position, assuming there
-     * is a move.
+     * is a move.  Searches to depth 1, 2, 3, ... in turn, each iteration
+     * trying the previous one's best move first, until either the time
+     * budget set by my controller runs out (the unfinished iteration is
+     * then discarded) or, if there is no budget, maxDepth is reached.
+     * When my controller asks for more than one thread, the root moves
+     * are dealt out round-robin to helper AIs that search them in
+     * parallel, each with its own board and tables, so that for a given
+     * number of threads an untimed search always picks the same move.
+     * If my controller has an opening book with a move for the position,
+     * or an endgame tablebase that finds a win or loss in it, plays that
+     * move without searching.  If I was pondering this very position and
+     * got at least as far as this search would, plays the move pondering
+     * found; otherwise searches as usual, starting from the tables that
+     * pondering warmed.  If the search is cut off before it completes
+     * depth 1, returns the move that looked best before searching.
      */
-    private Move findMove() {
-        Board b = new Board(board());
+    Move findMove() {
+        return findMove(false, 0);
+    }
+
+    /** Return a move for me as for findMove(), except that, when my
+     *  controller sets no time budget, the search goes exactly DEPTH
+     *  plies (plus quiescence) instead of maxDepth. */
+    Move findMove(int depth) {
+        _depthLimit = depth;
+        try {
+            return findMove();
+        } finally {
+            _depthLimit = 0;
+        }
+    }
+
+    /** Return a move for me as for findMove(), stopping at HARDDEADLINE
+     *  (a System.nanoTime value) iff HARDTIMED, even at depth 1. */
+    private Move findMove(boolean hardTimed, long hardDeadline) {
+        long start = System.nanoTime();
+        _hardTimed = hardTimed;
+        _hardDeadline = hardDeadline;
+        Move pondered = stopPondering(board());
+        if (pondered != null) {
+            SearchStats ponder = _lastStats;
+            _lastFoundMove = pondered;
+            _lastStats = new SearchStats(board().turn(),
+                                         board().moveCount() + 1);
+            _lastStats.finish(pondered, SearchStats.PONDER, ponder.depth(),
+                              System.nanoTime() - start,
+                              ponder.principalVariation());
+            return pondered;
+        }
+        return think(board(), start, false);
+    }
+
+    /** Return a move for me from POSITION, searching as described for
+     *  findMove, having started at START (a System.nanoTime value), and
+     *  stopping at _hardDeadline if _hardTimed.  If PONDERING, ignores my
+     *  controller's time budget and depth limit and any hard deadline,
+     *  searching deeper and deeper until cancelled.  Sets _lastFoundMove
+     *  and _lastStats. */
+    private Move think(Board position, long start, boolean pondering) {
+        Board b = _searchBoard;
+        b.copy(position);
         _lastFoundMove = null;
+        resetCounts();
+        for (AI helper : _helpers) {
+            helper.resetCounts();
+        }
+        OpeningBook book = _controller.openingBook();
+        Tablebase tablebase = _controller.tablebase();
+        String source = SearchStats.BOOK;
+        if (book != null) {
+            _lastFoundMove = book.bookMove(b);
+        }
+        if (_lastFoundMove == null && tablebase != null) {
+            _lastFoundMove = tablebase.bestMove(b);
+            source = SearchStats.TABLEBASE;
+        }
+        if (_lastFoundMove != null) {
+            _lastStats = new SearchStats(b.turn(), b.moveCount() + 1);
+            _lastStats.finish(_lastFoundMove, source, 0,
+                              System.nanoTime() - start,
+                              _lastFoundMove.toString());
+            return _lastFoundMove;
+        }
+        int threads = _controller.threads();
+        prepareHelpers(threads - 1);
+        for (AI helper : _helpers) {
+            helper._searchBoard.copy(b);
+        }
+
+        long budget = pondering ? 0 : _controller.moveTime();
+        int limit =
+            budget > 0 || pondering ? MAX_SEARCH_DEPTH
+            : _depthLimit > 0 ? _depthLimit : maxDepth(b);
+        int[] rootMoves = _moves[MAX_SEARCH_DEPTH];
+        int n = b.legalMoves(b.turn(), rootMoves);
+        _orderer.order(b, rootMoves, n, 0, 0);
+        long deadline = System.nanoTime() + budget * NANOS_PER_MILLI;
+        boolean hard = _hardTimed && !pondering;
+        Move best = null;
+        String pv = "";
+        int reached = 0, previous = 0;
+        for (int depth = 1; depth <= limit && n > 0; depth += 1) {
+            boolean timed = budget > 0 && depth > 1;
+            long stopAt = deadline;
+            if (hard && (!timed || _hardDeadline - deadline < 0)) {
+                stopAt = _hardDeadline;
+                timed = true;
+            }
+            int alpha = -INFTY, beta = INFTY;
+            if (depth > 1 && abs(previous) < WILL_WIN_VALUE) {
+                alpha = previous - ASPIRATION_WINDOW;
+                beta = previous + ASPIRATION_WINDOW;
+            }
+            AI winner = searchIteration(depth, rootMoves, n, threads,
+                                        stopAt, timed, alpha, beta);
+            if (winner != null && (winner._shareScore <= alpha
+                                   || winner._shareScore >= beta)) {
+                winner = searchIteration(depth, rootMoves, n, threads,
+                                         stopAt, timed, -INFTY, INFTY);
+            }
+            if (winner == null) {
+                break;
+            }
+            int bestMove = rootMoves[winner._shareIndex];
+            best = Move.unpack(bestMove);
+            pv = principalVariation(winner, bestMove, depth);
+            reached = depth;
+            previous = winner._shareScore;
+            if (abs(previous) >= WILL_WIN_VALUE) {
+                break;
+            }
+            moveToFront(rootMoves, n, bestMove);
+        }
+        if (best == null && n > 0) {
+            best = Move.unpack(rootMoves[0]);
+        }
+        _lastFoundMove = best;
+        _lastStats = new SearchStats(b.turn(), b.moveCount() + 1);
+        for (AI ai : searchers()) {
+            _lastStats.count(ai._nodes, ai._evaluations,
+                             ai._orderer.cutoffs(),
+                             ai._orderer.firstMoveCutoffs(),
+                             ai._tableProbes, ai._tableHits);
+        }
+        _lastStats.finish(best, SearchStats.SEARCH, reached,
+                          System.nanoTime() - start, pv);
+        return best;
+    }
+
+    /** Start thinking, on a background thread, about the position after
+     *  my MOVE and the reply my last search expected, if my controller
+     *  asks for pondering, my opponent is manual, and the game goes on
+     *  after both moves.  The thread is not one of my controller's search
+     *  pool's, so pondering is best left off when sessions share a
+     *  pool. */
+    private void startPondering(Move move) {
+        boolean manualOpponent =
+            _myPiece == WHITE ? _controller.manualBlack()
+            : _controller.manualWhite();
+        if (!_controller.ponder() || !manualOpponent || _lastStats == null) {
+            return;
+        }
+        String[] pv = _lastStats.principalVariation().split(" ");
+        Board position = new Board(board());
+        position.makeMove(move);
+        if (pv.length < 2 || position.winner() != null) {
+            return;
+        }
+        Move reply = Move.mv(pv[1]);
+        if (reply == null || !position.isLegal(reply)) {
+            return;
+        }
+        position.makeMove(reply);
+        if (position.winner() != null) {
+            return;
+        }
+        _ponderKey = position.hashKey();
+        _ponderer = new Thread(() -> {
+            think(position, System.nanoTime(), true);
+        });
+        _ponderer.setDaemon(true);
+        _ponderer.start();
+    }
+
+    /** Stop pondering, if I am, waiting for the thread to finish.  Return
+     *  the move pondering chose if it was for POSITION (which may be null)
+     *  and either searched for at least my controller's time budget or, if
+     *  there is none, reached the depth findMove would.  Otherwise return
+     *  null. */
+    private Move stopPondering(Board position) {
+        if (_ponderer == null) {
+            return null;
+        }
+        _stopPonder.set(true);
+        try {
+            _ponderer.join();
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            _ponderer = null;
+            _stopPonder.set(false);
+        }
+        if (position == null || _lastFoundMove == null
+            || position.hashKey() != _ponderKey) {
+            return null;
+        }
+        long budget = _controller.moveTime();
+        boolean enough =
+            budget > 0 ? _lastStats.nanos() >= budget * NANOS_PER_MILLI
+            : _lastStats.depth() >= maxDepth(position);
+        return enough && _lastStats.depth() > 0 ? _lastFoundMove : null;
+    }
+
+    /** Return statistics for my last findMove, or null if there was
+     *  none. */
+    SearchStats stats() {
+        return _lastStats;
+    }
+
+    /** Zero my search counters. */
+    private void resetCounts() {
+        _nodes = _evaluations = _tableProbes = _tableHits = 0;
+    }
+
+    /** Search the first N moves in ROOTMOVES to DEPTH with window
+     *  ALPHA..BETA, sharing them out among me and my helpers (THREADS in
+     *  all), stopping at DEADLINE iff TIMED.  Return whichever of us found
+     *  the best move (the first such in ROOTMOVES on ties), or null if the
+     *  search was cut off. */
+    private AI searchIteration(int depth, int[] rootMoves, int n,
+                               int threads, long deadline, boolean timed,
+                               int alpha, int beta) {
+        for (AI helper : _helpers) {
+            helper.startIteration(deadline, timed);
+        }
+        startIteration(deadline, timed);
+        List<Future<?>> work = new ArrayList<>();
+        for (int w = 0; w < _helpers.length; w += 1) {
+            AI helper = _helpers[w];
+            int first = w + 1;
+            work.add(_pool.submit(() -> helper.searchShare(
+                depth, rootMoves, n, first, threads, alpha, beta)));
+        }
+        searchShare(depth, rootMoves, n, 0, threads, alpha, beta);
+        for (Future<?> result : work) {
+            try {
+                result.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+        AI winner = this;
+        boolean stopped = _stopped;
+        for (AI helper : _helpers) {
+            stopped |= helper._stopped;
+            if (helper._shareIndex < 0) {
+                continue;
+            }
+            if (helper._shareScore > winner._shareScore
+                || (helper._shareScore == winner._shareScore
+                    && helper._shareIndex < winner._shareIndex)) {
+                winner = helper;
+            }
+        }
+        return stopped || winner._shareIndex < 0 ? null : winner;
+    }
+
+    /** Return the principal variation found by the iteration to DEPTH
+     *  that WINNER (me or a helper) won with root move FIRSTMOVE: that
+     *  move followed by the best replies recorded in WINNER's
+     *  transposition table, at most DEPTH moves in all, as text. */
+    private String principalVariation(AI winner, int firstMove, int depth) {
+        Board board = _searchBoard;
+        StringBuilder result = new StringBuilder();
+        int move = firstMove, made = 0;
+        while (made < depth) {
+            if (made > 0) {
+                result.append(' ');
+            }
+            result.append(Move.unpack(move));
+            board.makeMove(move);
+            made += 1;
+            int slot = winner._table.probe(board.hashKey());
+            if (board.winner() != null || slot < 0) {
+                break;
+            }
+            move = winner._table.move(slot);
+            if (move == 0 || !board.isLegal(Move.unpack(move))) {
+                break;
+            }
+        }
+        for (; made > 0; made -= 1) {
+            board.undo();
+        }
+        return result.toString();
+    }
+
+    /** Return me and my helpers. */
+    private AI[] searchers() {
+        AI[] result = new AI[_helpers.length + 1];
+        result[0] = this;
+        System.arraycopy(_helpers, 0, result, 1, _helpers.length);
+        return result;
+    }
+
+    /** Return the number of positions visited by my last search, including
+     *  those visited by my helpers and in quiescence search. */
+    long nodes() {
+        long total = _nodes;
+        for (AI helper : _helpers) {
+            total += helper._nodes;
+        }
+        return total;
+    }
+
+    /** Forget what earlier searches learned (the transposition tables and
+     *  move-ordering history of me and my helpers), so that the next
+     *  search starts as it would in a fresh game. */
+    void clearTables() {
+        if (_table != null) {
+            _table.clear();
+        }
+        _orderer.clear();
+        for (AI helper : _helpers) {
+            helper.clearTables();
+        }
+    }
 
-        if (b.turn() == WHITE) {
-            findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
+    /** Make sure there are exactly COUNT helper AIs, and a thread pool
+     *  to run them, and that my own table is ready for a new search. */
+    private void prepareHelpers(int count) {
+        if (_helpers.length != count) {
+            _helpers = new AI[count];
+            for (int w = 0; w < count; w += 1) {
+                _helpers[w] = new AI(_myPiece, _controller);
+                _helpers[w]._cancel = _cancel;
+                _helpers[w]._stopPonder = _stopPonder;
+            }
+            if (_pool != null) {
+                _pool.shutdown();
+                _pool = null;
+            }
+        }
+        if (count > 0 && _pool == null) {
+            _pool = new ThreadPoolExecutor(count, count, POOL_KEEP_ALIVE,
+                                           TimeUnit.SECONDS,
+                                           new LinkedBlockingQueue<>(),
+                                           r -> {
+                                               Thread t = new Thread(r);
+                                               t.setDaemon(true);
+                                               return t;
+                                           });
+            _pool.allowCoreThreadTimeOut(true);
+        }
+        prepareSearch();
+        for (AI helper : _helpers) {
+            helper.prepareSearch();
+        }
+    }
+
+    /** Make sure my transposition table has the size my controller asks
+     *  for, and mark the start of a new search in it and in my move
+     *  orderer.  Also picks up my controller's evaluator. */
+    private void prepareSearch() {
+        int megabytes = _controller.tableSize();
+        if (_table == null || _table.megabytes() != megabytes) {
+            _table = new TranspositionTable(megabytes);
         }
-        if (b.turn() == BLACK) {
-            findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
+        _table.newSearch();
+        _orderer.newSearch();
+        _evaluator = _controller.evaluator();
+        _lateMoveReductions = _controller.lateMoveReductions();
+        _nullMove = _controller.nullMove();
+    }
+
+    /** Prepare to search one iteration, which is to be cut off at
+     *  DEADLINE (a System.nanoTime value) iff TIMED. */
+    private void startIteration(long deadline, boolean timed) {
+        _deadline = deadline;
+        _timed = timed;
+        _stopped = false;
+    }
+
+    /** Search the root moves ROOTMOVES[FIRST], ROOTMOVES[FIRST + STRIDE],
+     *  ... (among the first N) of the position on my search board to
+     *  DEPTH with window ALPHA..BETA, as for search.  Leaves the best
+     *  score found, for the side to move, in _shareScore and the index in
+     *  ROOTMOVES of the first move with that score in _shareIndex (-1 if I
+     *  had no moves to search). */
+    private void searchShare(int depth, int[] rootMoves, int n, int first,
+                             int stride, int alpha, int beta) {
+        Board board = _searchBoard;
+        Piece mover = board.turn();
+        _shareScore = -INFTY;
+        _shareIndex = -1;
+        for (int k = first; k < n; k += stride) {
+            board.makeMove(rootMoves[k]);
+            int score;
+            if (wins(board, mover)) {
+                score = WINNING_VALUE - 1;
+            } else {
+                score = searchChild(board, depth, 0, alpha, beta,
+                                    k == first, 0);
+            }
+            board.undo();
+            if (_stopped) {
+                return;
+            }
+            if (_shareIndex < 0 || score > _shareScore) {
+                _shareScore = score;
+                _shareIndex = k;
+                alpha = max(alpha, score);
+            }
         }
+    }
 
-        return _lastFoundMove;
+    /** Return true iff the current search should stop because its time
+     *  budget is spent, it has been cancelled, or it is pondering that is
+     *  being stopped.  Only consults the clock and the flags every so
+     *  many calls. */
+    private boolean outOfTime() {
+        if (!_stopped) {
+            _clockCheck += 1;
+            if ((_clockCheck & CLOCK_CHECK_INTERVAL) == 0
+                && (_cancel.get() || _stopPonder.get()
+                    || _timed && System.nanoTime() - _deadline > 0)) {
+                _stopped = true;
+            }
+        }
+        return _stopped;
     }
 
     /**
@@ -85,129 +577,374 @@ class AI extends Player {
      */
     private Move _lastFoundMove;
 
+    /** The board on which searches are carried out.  Each search copies
+     *  the game position into it once and then explores the tree by
+     *  making and undoing moves, so that no Board is created per node. */
+    private final Board _searchBoard = new Board();
+
+    /** Move generation buffers: _moves[d] holds the moves of the node
+     *  being searched with d levels remaining. */
+    private final int[][] _moves = new int[MAX_SEARCH_DEPTH + 1][MAX_MOVES];
+
+    /** Move generation buffers for quiescence search: _quiescenceMoves[q]
+     *  holds the moves of the node q plies below a leaf. */
+    private final int[][] _quiescenceMoves =
+        new int[QUIESCENCE_DEPTH][MAX_MOVES];
+    /** Number of quiescence nodes searched below the current leaf. */
+    private int _quiescenceNodes;
+
+    /** Time (System.nanoTime) at which a timed search should stop. */
+    private long _deadline;
+    /** True iff the current iteration may be cut off at _deadline.  The
+     *  first iteration never is, so that there is always a move. */
+    private boolean _timed;
+    /** True once the current iteration has been cut off. */
+    private boolean _stopped;
+    /** Number of calls to outOfTime in this search. */
+    private int _clockCheck;
+    /** Number of positions visited by my part of the current search. */
+    private long _nodes;
+    /** Numbers of static evaluations, transposition-table probes and
+     *  table hits in my part of the current search. */
+    private long _evaluations, _tableProbes, _tableHits;
+    /** Statistics for my last findMove, or null. */
+    private SearchStats _lastStats;
+    /** Set to stop the search in progress, whether mine or, for a
+     *  helper, my master's; shared by a master and its helpers. */
+    private AtomicBoolean _cancel = new AtomicBoolean();
+    /** Set to stop pondering; shared like _cancel.  Kept apart from
+     *  _cancel so that stopping the ponderer neither loses nor causes a
+     *  cancelMove of the search that follows. */
+    private AtomicBoolean _stopPonder = new AtomicBoolean();
+    /** The thread pondering for me, or null. */
+    private Thread _ponderer;
+    /** Key (see Board.hashKey) of the position being pondered. */
+    private long _ponderKey;
+    /** True iff the current search must stop at _hardDeadline (a
+     *  System.nanoTime value) whatever the depth. */
+    private boolean _hardTimed;
+    /** The hard deadline of the current search. */
+    private long _hardDeadline;
+    /** Depth of an untimed search, if positive, in place of maxDepth. */
+    private int _depthLimit;
+    /** Best score found by the last searchShare. */
+    private int _shareScore;
+    /** Index among the root moves of the move with score _shareScore,
+     *  or -1. */
+    private int _shareIndex;
+
+    /** The AIs that search shares of the root moves alongside me. */
+    private AI[] _helpers = new AI[0];
+    /** Threads on which my helpers run, or null if I have none. */
+    private ThreadPoolExecutor _pool;
+
+    /** Scores the leaves of the current search. */
+    private Evaluator _evaluator;
+
+    /** True iff the current search uses late-move reductions and
+     *  null-move pruning, respectively. */
+    private boolean _lateMoveReductions, _nullMove;
+
+    /** Orders the moves at each node of my searches. */
+    private final MoveOrderer _orderer = new MoveOrderer(MAX_SEARCH_DEPTH);
+    /** Results of earlier searches, kept from one move to the next.
+     *  Created on first use, with the size given by my controller. */
+    private TranspositionTable _table;
+
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _lastFoundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * Return the value of position BOARD for the side to move (positive
+     * is good for that side), searched to DEPTH plies with window ALPHA
+     * to BETA.  BOARD is PLY moves from the root of the search; this
+     * differs from the iteration's depth less DEPTH once reductions have
+     * shortened the path.  A result at or below ALPHA is only an upper
+     * bound on the value, and one at or above BETA only a lower bound.
+     * Searching at depth 0 goes on to a quiescence search.  Null-move
+     * pruning is tried only if NULLOK, so that two null moves are never
+     * made in a row.
      */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        Board btest = new Board(board);
-        if (depth == 0 || board.winner() != null) {
-            return staticScore(board);
-        }
-        if (sense == 1) {
-            Move bestmovesofar = null; int bestvalsofar = -INFTY;
-            List<Move> lgmoves = btest.legalMoves(WHITE);
-            for (Move m : lgmoves) {
-                btest = new Board(board);
-                btest.makeMove(m);
-                if (btest.kingPosition() != null
-                        && btest.kingPosition().isEdge()) {
-                    _lastFoundMove = m;
-                    return WINNING_VALUE;
-                }
-                int score = findMove(btest, depth - 1,
-                        saveMove, -1, alpha, beta);
-                if (score > bestvalsofar) {
-                    bestmovesofar = m; bestvalsofar = score;
-                    alpha = max(alpha, bestvalsofar);
-                    if (beta <= alpha) {
-                        break;
+    private int search(Board board, int depth, int ply, int alpha, int beta,
+                       boolean nullOk) {
+        if (outOfTime()) {
+            return 0;
+        }
+        _nodes += 1;
+        Piece mover = board.turn();
+        Piece winner = board.winner();
+        if (winner != null) {
+            return winner == mover ? WINNING_VALUE - ply
+                : -(WINNING_VALUE - ply);
+        }
+        if (depth == 0) {
+            _quiescenceNodes = 0;
+            return quiesce(board, ply, 0, alpha, beta);
+        }
+        long key = board.hashKey();
+        int hashMove = 0;
+        int slot = _table.probe(key);
+        _tableProbes += 1;
+        if (slot >= 0) {
+            _tableHits += 1;
+            hashMove = _table.move(slot);
+            if (_table.depth(slot) >= depth) {
+                int score = fromTable(_table.score(slot), ply);
+                switch (_table.bound(slot)) {
+                case TranspositionTable.EXACT:
+                    return score;
+                case TranspositionTable.LOWER:
+                    if (score >= beta) {
+                        return score;
+                    }
+                    break;
+                default:
+                    if (score <= alpha) {
+                        return score;
                     }
+                    break;
                 }
             }
-            if (saveMove) {
-                _lastFoundMove = bestmovesofar;
+        }
+        if (nullOk && _nullMove && depth >= NULL_MOVE_MIN_DEPTH
+            && beta < WILL_WIN_VALUE && nullMoveSafe(board)
+            && (mover == WHITE ? 1 : -1) * staticScore(board) >= beta) {
+            board.makeNullMove();
+            int score = -search(board, depth - 1 - NULL_MOVE_REDUCTION,
+                                ply + 1, -beta, -beta + 1, false);
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return min(score, WILL_WIN_VALUE - 1);
             }
-            return bestvalsofar;
         }
-        if (sense == -1) {
-            Move bestmovesofar = null; int bestvalsofar = INFTY;
-            List<Move> lgmoves = btest.legalMoves(BLACK);
-            for (Move m : lgmoves) {
-                btest = new Board(board);
-                btest.makeMove(m);
-                if (btest.kingPosition() == null) {
-                    _lastFoundMove = m;
-                    return -WINNING_VALUE;
-                }
-                int score = findMove(btest, depth - 1,
-                        saveMove, 1, alpha, beta);
-                if (score < bestvalsofar) {
-                    bestmovesofar = m; bestvalsofar = score;
-                    beta = min(beta, bestvalsofar);
-                    if (beta <= alpha) {
-                        break;
-                    }
+        int alpha0 = alpha;
+        int bestMove = 0, best = -INFTY;
+        int[] moves = _moves[depth];
+        int n = board.legalMoves(mover, moves);
+        _orderer.order(board, moves, n, hashMove, ply);
+        for (int k = 0; k < n; k += 1) {
+            boolean reduce = _lateMoveReductions && k >= LMR_MIN_INDEX
+                && depth >= LMR_MIN_DEPTH && moves[k] != hashMove
+                && !board.isTactical(moves[k]);
+            board.makeMove(moves[k]);
+            if (wins(board, mover)) {
+                board.undo();
+                return WINNING_VALUE - (ply + 1);
+            }
+            int score = searchChild(board, depth, ply, alpha, beta, k == 0,
+                                    reduce ? LMR_REDUCTION : 0);
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (score > best) {
+                bestMove = moves[k];
+                best = score;
+                alpha = max(alpha, best);
+                if (alpha >= beta) {
+                    _orderer.cutoff(board, moves[k], ply, depth, k);
+                    break;
                 }
             }
-            if (saveMove) {
-                _lastFoundMove = bestmovesofar;
+        }
+        int bound = best <= alpha0 ? TranspositionTable.UPPER
+            : best >= beta ? TranspositionTable.LOWER
+            : TranspositionTable.EXACT;
+        _table.store(key, depth, bound, toTable(best, ply), bestMove);
+        return best;
+    }
+
+    /** Return SCORE, the value of a position PLY moves from the root, in
+     *  the form kept in my table, where wins and losses are counted from
+     *  the position itself rather than from the root.  This lets an entry
+     *  be used wherever the position is met again. */
+    private static int toTable(int score, int ply) {
+        if (score >= WILL_WIN_VALUE && score <= WINNING_VALUE) {
+            return score + ply;
+        } else if (score <= -WILL_WIN_VALUE && score >= -WINNING_VALUE) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    /** Return the value of a position PLY moves from the root whose
+     *  score in my table is SCORE (the inverse of toTable). */
+    private static int fromTable(int score, int ply) {
+        if (score >= WILL_WIN_VALUE && score <= WINNING_VALUE) {
+            return score - ply;
+        } else if (score <= -WILL_WIN_VALUE && score >= -WINNING_VALUE) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    /**
+     * Return the value, for the side that just moved, of BOARD, which is
+     * the position after a move from a node PLY moves from the root being
+     * searched to DEPTH with window ALPHA to BETA.  This is principal
+     * variation search: the FIRST move at a node is searched with the
+     * full window, and the others, which move ordering makes unlikely to
+     * be better, with a null window just above ALPHA, which is cheaper
+     * and only shows whether they are.  Those that turn out to be better
+     * are searched again with the full window to find their values.  A
+     * move that is not FIRST is first searched REDUCTION plies shallower
+     * (a late-move reduction), and then to the full depth only if that
+     * shows it might be better.
+     */
+    private int searchChild(Board board, int depth, int ply, int alpha,
+                            int beta, boolean first, int reduction) {
+        if (first) {
+            return -search(board, depth - 1, ply + 1, -beta, -alpha, true);
+        }
+        int score;
+        if (reduction > 0) {
+            score = -search(board, depth - 1 - reduction, ply + 1,
+                            -alpha - 1, -alpha, true);
+            if (score <= alpha || _stopped) {
+                return score;
             }
-            return bestvalsofar;
         }
-        return 0;
+        score = -search(board, depth - 1, ply + 1, -alpha - 1, -alpha, true);
+        if (score > alpha && score < beta && !_stopped) {
+            score = -search(board, depth - 1, ply + 1, -beta, -alpha, true);
+        }
+        return score;
+    }
+
+    /** Return true iff it is safe to try a null move in BOARD: that is,
+     *  iff passing could not simply hand the opponent a win that any real
+     *  move would prevent.  Tablut has positions like zugzwang around the
+     *  king, where the side to move must act at once: White when the king
+     *  is being surrounded, and Black when the king has a clear path to
+     *  the edge.  Null moves are not tried there. */
+    private static boolean nullMoveSafe(Board board) {
+        if (board.turn() == WHITE) {
+            return board.kingAttackers() == 0;
+        }
+        return board.kingEscapeRoutes() == 0;
     }
 
+    /** Return true iff MOVER has just won BOARD by moving the king to the
+     *  edge (as White) or capturing it (as Black). */
+    private static boolean wins(Board board, Piece mover) {
+        Square king = board.kingPosition();
+        return mover == WHITE ? king != null && king.isEdge() : king == null;
+    }
+
+    /**
+     * Return the value of position BOARD for the side to move, where
+     * ALPHA and BETA are as for search, looking only at captures and
+     * king escapes (see Board.isTactical) so that a leaf is not scored
+     * in the middle of an exchange.  The side to move may instead stand
+     * on the static score.  BOARD is PLY moves from the root, and QPLY
+     * is the number of those that were made below the leaf.  Gives up,
+     * standing on the static score, once the leaf has used
+     * QUIESCENCE_NODE_LIMIT nodes or QUIESCENCE_DEPTH plies.
+     */
+    private int quiesce(Board board, int ply, int qply, int alpha,
+                        int beta) {
+        Piece winner = board.winner();
+        if (winner != null) {
+            return winner == board.turn() ? WINNING_VALUE - ply
+                : -(WINNING_VALUE - ply);
+        }
+        int standPat = (board.turn() == WHITE ? 1 : -1) * staticScore(board);
+        _quiescenceNodes += 1;
+        _nodes += 1;
+        if (qply == QUIESCENCE_DEPTH
+            || _quiescenceNodes >= QUIESCENCE_NODE_LIMIT) {
+            return standPat;
+        }
+        int best = standPat;
+        if (best >= beta) {
+            return best;
+        }
+        alpha = max(alpha, best);
+        int[] moves = _quiescenceMoves[qply];
+        int n = board.legalMoves(board.turn(), moves);
+        for (int k = 0; k < n; k += 1) {
+            if (!board.isTactical(moves[k])) {
+                continue;
+            }
+            board.makeMove(moves[k]);
+            int score = -quiesce(board, ply + 1, qply + 1, -beta, -alpha);
+            board.undo();
+            if (score > best) {
+                best = score;
+                alpha = max(alpha, score);
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Move MOVE, if it is one of the first N entries of MOVES, to the
+     *  front, shifting the entries before it back by one. */
+    private static void moveToFront(int[] moves, int n, int move) {
+        if (move == 0) {
+            return;
+        }
+        for (int k = 0; k < n; k += 1) {
+            if (moves[k] == move) {
+                System.arraycopy(moves, 0, moves, 1, k);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
 
     /**
      * Return a heuristically determined maximum search depth
-     * based on characteristics of BOARD.
+     * based on characteristics of BOARD, used when there is no time
+     * budget.
      */
     private static int maxDepth(Board board) {
         return 4;
     }
 
     /**
-     * Return a heuristic value for BOARD.
+     * Return a heuristic value for BOARD, as given by the evaluator of
+     * the current search.
      */
     private int staticScore(Board board) {
-        int whitewins = 0;
-        int vlcapkingthrone = 0;
-        int vlcapkingnonthrone = 0;
-        int valuekingtoedge = 0;
-        int valueatedge = 0;
-        int valuefromedge = 0;
-        int valueb = 0;
-        int valuew = 0;
-
-        if (board.kingPosition() != null) {
-            if (board.kingPosition().isEdge()) {
-                valueatedge = WINNING_VALUE;
-            }
-        }
-
-        if (board.kingPosition() != null) {
-            if (!board.kingPosition().isEdge()) {
-                Square currkg = board.kingPosition();
-                int distrowed8 = (SIZE - 1) - currkg.row();
-                int distcoled8 = (SIZE - 1) - currkg.col();
-                int distrowed0 = currkg.row();
-                int distcoled0 = currkg.col();
-                int minrowed = min(distrowed0, distrowed8);
-                int mincoled = min(distcoled0, distcoled8);
-                int minrowcoled = min(minrowed, mincoled);
-                int valuek = NUMBER - minrowcoled;
-                valuefromedge = valuek;
-            }
-        }
-        HashSet<Square> hashsetsqsB = board.pieceLoc(BLACK);
-        int bpieces = hashsetsqsB.size();
-        int valuebp = -bpieces;
-        valueb = valuebp;
-
-
-        HashSet<Square> hashsetsqsW = board.pieceLoc(WHITE);
-        int wpieces = hashsetsqsW.size();
-        int valuewp = wpieces;
-        valuew = valuewp;
-
-        return valuewp + valuebp + valuefromedge;
-    }
-    /**Constant for maximum King at edge score. */
-    static final int NUMBER = 50;
+        _evaluations += 1;
+        return _evaluator.score(board);
+    }
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** One less than the number of outOfTime calls between clock
+     *  readings (a power of two minus one). */
+    private static final int CLOCK_CHECK_INTERVAL = 1023;
+
+    /** Seconds an idle helper thread waits for work before ending. */
+    private static final long POOL_KEEP_ALIVE = 60;
+
+    /** Most plies of captures searched below a leaf. */
+    static final int QUIESCENCE_DEPTH = 8;
+
+    /** Most quiescence nodes searched below any one leaf. */
+    static final int QUIESCENCE_NODE_LIMIT = 256;
+
+    /** Least depth at which null moves are tried, and the number of plies
+     *  by which the search after a null move is reduced. */
+    static final int NULL_MOVE_MIN_DEPTH = 3, NULL_MOVE_REDUCTION = 2;
+
+    /** Late-move reductions apply to quiet moves at index LMR_MIN_INDEX
+     *  or later in the move order, at depth LMR_MIN_DEPTH or more, and
+     *  reduce the depth by LMR_REDUCTION plies. */
+    static final int LMR_MIN_INDEX = 3, LMR_MIN_DEPTH = 3, LMR_REDUCTION = 1;
+
+    /** Half-width of the aspiration window: each iteration after the
+     *  first starts with a window this far either side of the previous
+     *  iteration's score, and is searched again with a full window if
+     *  its score falls outside. */
+    static final int ASPIRATION_WINDOW = 4;
+
+    /** Deepest search supported.  The move buffer for this depth is used
+     *  for the root moves. */
+    static final int MAX_SEARCH_DEPTH = 64;
 }
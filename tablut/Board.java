@@ -1,15 +1,13 @@
 package tablut;
 
-import java.util.Iterator;
 import java.util.HashSet;
-import java.util.Deque;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.ArrayDeque;
 import java.util.Formatter;
+import java.util.Random;
 import static tablut.Piece.*;
 import static tablut.Square.*;
-import static tablut.Move.mv;
 
 
 /** The state of a Tablut Game.
@@ -57,61 +55,41 @@ class Board {
         if (model == this) {
             return;
         }
-        init();
-        for (int i = 0; i < SIZE; i += 1) {
-            for (int j = 0; j < SIZE; j += 1) {
-                _board[i][j] = model.get(i, j);
-            }
-        }
-        Deque<Square> copystacksq = new ArrayDeque<Square>();
-        Deque<Piece> copystackpiece = new ArrayDeque<Piece>();
-        Deque<Integer> copystackmvcount = new ArrayDeque<Integer>();
-        Deque<Square> copystacksqcap = new ArrayDeque<Square>();
-        Deque<Piece> copystackpiececap = new ArrayDeque<Piece>();
-        Deque<Integer> copystackmvcountcap = new ArrayDeque<Integer>();
-        copystacksq.addAll(_stacksq);
-        copystackpiece.addAll(_stackpiece);
-        copystackmvcount.addAll(_stackmvcount);
-        copystacksqcap.addAll(_stacksqcap);
-        copystackpiececap.addAll(_stackpiececap);
-        copystackmvcountcap.addAll(_stackmvcountcap);
+        _blackLo = model._blackLo; _blackHi = model._blackHi;
+        _whiteLo = model._whiteLo; _whiteHi = model._whiteHi;
+        _king = model._king; _hash = model._hash;
+        _whiteCount = model._whiteCount; _blackCount = model._blackCount;
         _turn = model._turn; _winner = model._winner;
         _repeated = model._repeated; _moveCount = model._moveCount;
-        _moveLimit = model._moveLimit; _stacksq = copystacksq;
-        _stackpiece = copystackpiece; _stackmvcount = copystackmvcount;
-        _stacksqcap = copystacksqcap; _stackpiececap = copystackpiececap;
-        _stackmvcountcap = copystackmvcountcap;
+        _moveLimit = model._moveLimit;
+        _history.copy(model._history);
+        if (_journal.length < model._journalTop) {
+            _journal = new int[model._journal.length];
+        }
+        System.arraycopy(model._journal, 0, _journal, 0, model._journalTop);
+        _journalTop = model._journalTop;
     }
 
     /** Clears the board to the initial position. */
     void init() {
         _turn = BLACK;
+        _hash = BLACK_TO_MOVE;
         _winner = null;
         _repeated = false;
         _moveCount = 0;
         _moveLimit = Integer.MAX_VALUE;
-        _board = new Piece [SIZE][SIZE];
-        _states = new ArrayList<String>();
-        _stacksq = new ArrayDeque<Square>();
-        _stackpiece = new ArrayDeque<Piece>();
-        _stackmvcount = new ArrayDeque<Integer>();
-        _stacksqcap = new ArrayDeque<Square>();
-        _stackpiececap = new ArrayDeque<Piece>();
-        _stackmvcountcap = new ArrayDeque<Integer>();
-        for (int i = 0; i < SIZE; i += 1) {
-            for (int j = 0; j < SIZE; j += 1) {
-                _board[i][j] = EMPTY;
-            }
-        }
+        _blackLo = _blackHi = _whiteLo = _whiteHi = 0;
+        _king = -1;
+        _whiteCount = _blackCount = 0;
+        _history.clear();
+        _journalTop = 0;
         for (int i = 0; i < INITIAL_DEFENDERS.length; i += 1) {
-            Square currsq = INITIAL_DEFENDERS[i];
-            _board[currsq.col()][currsq.row()] = WHITE;
+            put(WHITE, INITIAL_DEFENDERS[i]);
         }
         for (int j = 0; j < INITIAL_ATTACKERS.length; j += 1) {
-            Square currsq = INITIAL_ATTACKERS[j];
-            _board[currsq.col()][currsq.row()] = BLACK;
+            put(BLACK, INITIAL_ATTACKERS[j]);
         }
-        _board[THRONE.col()][THRONE.row()] = KING;
+        put(KING, THRONE);
         checkRepeated();
     }
 
@@ -144,12 +122,18 @@ class Board {
     /** Record current position and set winner() next mover if the current
      *  position is a repeat. */
     private void checkRepeated() {
-        String currstate = this.encodedBoard();
-        if (_states.contains(currstate)) {
+        if (_history.contains(_hash)) {
             _winner = _turn;
             _repeated = true;
         }
-        _states.add(currstate);
+        _history.add(_hash);
+    }
+
+    /** Return the Zobrist key of the current position (the pieces on the
+     *  board and the side to move).  Equal positions have equal keys;
+     *  distinct positions have distinct keys with high probability. */
+    long hashKey() {
+        return _hash;
     }
 
     /** Return the number of moves since the initial position that have not been
@@ -158,29 +142,119 @@ class Board {
         return _moveCount;
     }
 
-    /** Return location of the king. */
+    /** Return location of the king, or null if it has been captured. */
     Square kingPosition() {
-        Square kingsq = null;
-        for (int i = 0; i < SIZE; i += 1) {
-            for (int j = 0; j < SIZE; j += 1) {
-                Piece currp = _board[i][j];
-                if (currp.toString().equals("K")) {
-                    kingsq = sq(i, j);
-                }
+        return _king < 0 ? null : sq(_king);
+    }
+
+    /** Return the number of pieces on SIDE (WHITE or BLACK), counting the
+     *  king as WHITE.  Kept up to date by put, so this takes constant
+     *  time. */
+    int pieceCount(Piece side) {
+        if (side == BLACK) {
+            return _blackCount;
+        }
+        return _whiteCount + (_king >= 0 ? 1 : 0);
+    }
+
+    /** Return the number of steps from the king to the nearest edge of
+     *  the board along a row or column, or -1 if there is no king. */
+    int kingEdgeDistance() {
+        return _king < 0 ? -1 : EDGE_DISTANCE[_king];
+    }
+
+    /** Return the number of black pieces orthogonally adjacent to the
+     *  king (0 if there is no king). */
+    int kingAttackers() {
+        return _king < 0 ? 0 : adjacentCount(BLACK, _king);
+    }
+
+    /** Return the number of directions in which the king could move
+     *  straight to the edge of the board because every square between it
+     *  and the edge is empty (0 if there is no king or it is already on
+     *  the edge). */
+    int kingEscapeRoutes() {
+        if (_king < 0) {
+            return 0;
+        }
+        int routes = 0;
+        int[][] rays = ROOK_INDICES[_king];
+        for (int dir = 0; dir < rays.length; dir += 1) {
+            int[] ray = rays[dir];
+            int k;
+            for (k = 0; k < ray.length && !occupied(ray[k]); k += 1) {
+                continue;
+            }
+            if (ray.length > 0 && k == ray.length) {
+                routes += 1;
             }
         }
-        return kingsq;
+        return routes;
+    }
+
+    /** Return the number of legal moves SIDE has on the current board,
+     *  ignoring whose turn it is. */
+    int mobility(Piece side) {
+        return legalMoves(side, moveBuffer());
     }
 
     /** Return the contents the square at S. */
     final Piece get(Square s) {
-        return get(s.col(), s.row());
+        return get(s.index());
     }
 
     /** Return the contents of the square at (COL, ROW), where
      *  0 <= COL, ROW <= 9. */
     final Piece get(int col, int row) {
-        return _board[col][row];
+        assert exists(col, row);
+        return get(row * SIZE + col);
+    }
+
+    /** Return the contents of the square with index INDEX. */
+    private Piece get(int index) {
+        if (index == _king) {
+            return KING;
+        }
+        long b = bit(index);
+        if (index < WORD_BITS) {
+            return (_blackLo & b) != 0 ? BLACK
+                : (_whiteLo & b) != 0 ? WHITE : EMPTY;
+        } else {
+            return (_blackHi & b) != 0 ? BLACK
+                : (_whiteHi & b) != 0 ? WHITE : EMPTY;
+        }
+    }
+
+    /** Return true iff the square with index INDEX holds any piece. */
+    private boolean occupied(int index) {
+        if (index < WORD_BITS) {
+            return ((_blackLo | _whiteLo) & bit(index)) != 0
+                || index == _king;
+        } else {
+            return ((_blackHi | _whiteHi) & bit(index)) != 0
+                || index == _king;
+        }
+    }
+
+    /** Return true iff the square with index INDEX holds an ordinary piece
+     *  of SIDE (WHITE or BLACK).  The king does not count as WHITE. */
+    private boolean holds(Piece side, int index) {
+        long word;
+        if (index < WORD_BITS) {
+            word = side == BLACK ? _blackLo : _whiteLo;
+        } else {
+            word = side == BLACK ? _blackHi : _whiteHi;
+        }
+        return (word & bit(index)) != 0;
+    }
+
+    /** Return the number of ordinary pieces of SIDE orthogonally adjacent
+     *  to the square with index INDEX. */
+    private int adjacentCount(Piece side, int index) {
+        long lo = side == BLACK ? _blackLo : _whiteLo,
+            hi = side == BLACK ? _blackHi : _whiteHi;
+        return Long.bitCount(lo & ADJACENT_LO[index])
+            + Long.bitCount(hi & ADJACENT_HI[index]);
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -188,18 +262,58 @@ class Board {
         return get(col - 'a', row - '1');
     }
 
-    /** Set square S to P. */
+    /** Set square S to P.  There is at most one king: putting KING on S
+     *  removes it from wherever it was before. */
     final void put(Piece p, Square s) {
         assert exists(s.col(), s.row());
-        _board[s.col()][s.row()] = p;
-    }
-
-    /** Set square S to P and record for undoing. */
-    final void revPut(Piece p, Square s) {
-        put(p, s);
-        _stacksq.push(s);
-        _stackpiece.push(p);
-        _stackmvcount.push(_moveCount);
+        put(p, s.index());
+    }
+
+    /** Set the square with index INDEX to P, as for put(P, sq(INDEX)). */
+    private void put(Piece p, int index) {
+        long clear = ~bit(index);
+        Piece old = get(index);
+        _hash ^= ZOBRIST[old.ordinal()][index];
+        if (old == WHITE) {
+            _whiteCount -= 1;
+        } else if (old == BLACK) {
+            _blackCount -= 1;
+        }
+        if (index < WORD_BITS) {
+            _blackLo &= clear; _whiteLo &= clear;
+        } else {
+            _blackHi &= clear; _whiteHi &= clear;
+        }
+        if (index == _king) {
+            _king = -1;
+        }
+        switch (p) {
+        case KING:
+            if (_king >= 0) {
+                _hash ^= ZOBRIST[KING.ordinal()][_king];
+            }
+            _king = index;
+            break;
+        case BLACK:
+            if (index < WORD_BITS) {
+                _blackLo |= ~clear;
+            } else {
+                _blackHi |= ~clear;
+            }
+            _blackCount += 1;
+            break;
+        case WHITE:
+            if (index < WORD_BITS) {
+                _whiteLo |= ~clear;
+            } else {
+                _whiteHi |= ~clear;
+            }
+            _whiteCount += 1;
+            break;
+        default:
+            break;
+        }
+        _hash ^= ZOBRIST[p.ordinal()][index];
     }
 
     /** Set square COL ROW to P. */
@@ -211,64 +325,19 @@ class Board {
      *  board.  For this to be true, FROM-TO must be a rook move and the
      *  squares along it, other than FROM, must be empty. */
     boolean isUnblockedMove(Square from, Square to) {
-        Boolean unblocked = true;
-        if (!exists(from.col(), from.row()) && !exists(to.col(), to.row())) {
-            unblocked = false;
-            return unblocked;
-        } else if (!isLegal(from)) {
-            unblocked = false;
-            return unblocked;
-        } else if (!from.isRookMove(to)) {
-            unblocked = false;
-            return unblocked;
-        } else {
-            int fcol = from.col(); int frow = from.row();
-            int tcol = to.col(); int trow = to.row();
-            int distrow = frow - trow;
-            int distcol = fcol - tcol;
-            if (distcol != 0 && distrow == 0) {
-                if (distcol > 0) {
-                    while (distcol != 0) {
-                        fcol = fcol - 1;
-                        distcol = distcol - 1;
-                        if (get(fcol, frow) != EMPTY) {
-                            unblocked = false;
-                            return unblocked;
-                        }
-                    }
-                } else {
-                    while (distcol != 0)  {
-                        fcol = fcol + 1;
-                        distcol = distcol + 1;
-                        if (get(fcol, frow) != EMPTY) {
-                            unblocked = false;
-                            return unblocked;
-                        }
-                    }
-                }
-            } else if (distcol == 0 && distrow != 0) {
-                if (distrow > 0) {
-                    while (distrow != 0) {
-                        frow = frow - 1;
-                        distrow = distrow - 1;
-                        if (get(fcol, frow) != EMPTY) {
-                            unblocked = false;
-                            return unblocked;
-                        }
-                    }
-                } else {
-                    while (distrow != 0) {
-                        frow = frow + 1;
-                        distrow = distrow + 1;
-                        if (get(fcol, frow) != EMPTY) {
-                            unblocked = false;
-                            return unblocked;
-                        }
-                    }
-                }
+        if (!isLegal(from) || !from.isRookMove(to)) {
+            return false;
+        }
+        SqList ray = ROOK_SQUARES[from.index()][from.direction(to)];
+        for (int k = 0; k < ray.size(); k += 1) {
+            Square s = ray.get(k);
+            if (occupied(s.index())) {
+                return false;
+            } else if (s == to) {
+                break;
             }
         }
-        return unblocked;
+        return true;
     }
 
     /** Return true iff FROM is a valid starting square for a move. */
@@ -296,225 +365,290 @@ class Board {
 
     /** Move FROM-TO, assuming this is a legal move. */
     void makeMove(Square from, Square to) {
-        assert isLegal(from, to);
-        revPut(get(from), to); revPut(EMPTY, from);
+        makeMove(Move.pack(from.index(), to.index()));
+    }
+
+    /** Move according to MOVE, assuming it is a legal move. */
+    void makeMove(Move move) {
+        makeMove(move.packed());
+    }
+
+    /** Make the packed move MOVE (see Move.pack), assuming it is legal.
+     *  This is the form used by the search, which keeps its moves in int
+     *  arrays and so never needs Move or Square objects. */
+    void makeMove(int move) {
+        int from = Move.packedFrom(move), to = Move.packedTo(move);
+        assert isLegal(sq(from), sq(to));
+        pushUndoRecord(from, to);
+        put(get(from), to); put(EMPTY, from);
         _moveCount = _moveCount + 1;
-        if (to == kingPosition() && to.isEdge()) {
+        if (to == _king && sq(to).isEdge()) {
             _winner = WHITE;
         }
-        Square sqN = to.rookMove(0, 2); Square sqE = to.rookMove(1, 2);
-        Square sqS = to.rookMove(2, 2); Square sqW = to.rookMove(3, 2);
-        if (sqN != null && (get(sqN) == _turn || (get(sqN) == KING
-                && get(sqN) == _turn))) {
-            capture(to, sqN);
-        }
-        if (sqE != null && (get(sqE) == _turn || (get(sqE) == KING
-                && get(sqE) == _turn))) {
-            capture(to, sqE);
-        }
-        if (sqS != null && (get(sqS) == _turn || (get(sqS) == KING
-                && get(sqS) == _turn))) {
-            capture(to, sqS);
-        }
-        if (sqW != null && (get(sqW) == _turn || (get(sqW) == KING
-                && get(sqW) == _turn))) {
-            capture(to, sqW);
-        }
-        if (sqN == THRONE || sqE == THRONE || sqS == THRONE || sqW == THRONE) {
-            if (get(THRONE) == EMPTY) {
-                capture(to, THRONE);
-            } else {
-                if (WHITE == _turn) {
-                    capture(to, THRONE);
-                } else if (BLACK == _turn) {
-                    if (get(NTHRONE) != BLACK && get(STHRONE) == BLACK
-                            && get(WTHRONE) == BLACK &&  get(ETHRONE) == BLACK
-                            || get(NTHRONE) == BLACK && get(STHRONE) != BLACK
-                            && get(WTHRONE) == BLACK &&  get(ETHRONE) == BLACK
-                            || get(NTHRONE) == BLACK && get(STHRONE) == BLACK
-                            && get(WTHRONE) != BLACK &&  get(ETHRONE) == BLACK
-                            || get(NTHRONE) == BLACK && get(STHRONE) == BLACK
-                            && get(WTHRONE) == BLACK && get(ETHRONE) != BLACK) {
-                        capture(to, THRONE);
-                    }
-                }
+        int[][] rays = ROOK_INDICES[to];
+        for (int dir = 0; dir < rays.length; dir += 1) {
+            int[] ray = rays[dir];
+            if (ray.length >= 2 && isAnvil(to, ray[1], _blackLo)) {
+                capture(ray[0], dir);
             }
         }
-        _turn = _turn.opponent(); checkRepeated();
-        if (_moveCount == _moveLimit) {
+        _turn = _turn.opponent(); _hash ^= BLACK_TO_MOVE;
+        checkRepeated();
+        if (_moveCount >= _moveLimit) {
             _winner = WHITE;
         }
     }
-    /** Move according to MOVE, assuming it is a legal move. */
-    void makeMove(Move move) {
-        makeMove(move.from(), move.to());
-    }
-
-    /** Capture the piece between SQ0 and SQ2, assuming a piece just moved to
-     *  SQ0 and the necessary conditions are satisfied. */
-    private void capture(Square sq0, Square sq2) {
-        Square btw = sq0.between(sq2);
-        if (get(btw) != KING && get(btw) != EMPTY && get(btw) != _turn) {
-            _stacksqcap.push(btw);
-            _stackpiececap.push(get(btw));
-            _stackmvcountcap.push(_moveCount);
-            put(EMPTY, btw);
-        } else if (btw == kingPosition() && kingPosition() != NTHRONE
-                && kingPosition() != STHRONE
-                && kingPosition() != WTHRONE && kingPosition() != ETHRONE
-                && kingPosition() != THRONE) {
-            _stacksqcap.push(btw);
-            _stackpiececap.push(get(btw));
-            _stackmvcountcap.push(_moveCount);
-            put(EMPTY, btw);
+
+    /** Return true iff the square with index BEYOND, two squares from
+     *  the square with index TO just moved to, lets the side to move
+     *  capture the piece between them: it holds one of the side's own
+     *  pieces, or it is the throne and the throne is hostile.  The
+     *  occupied throne is hostile to white, and to black only when black
+     *  holds three of its neighbours, where BLACKLO is the low word of
+     *  black's pieces once the move is made. */
+    private boolean isAnvil(int to, int beyond, long blackLo) {
+        if (holds(_turn, beyond)) {
+            return true;
+        } else if (beyond != THRONE.index() || to >= WORD_BITS
+                   || (THRONE_RING_LO & bit(to)) == 0) {
+            return false;
+        } else {
+            return get(THRONE) == EMPTY || _turn == WHITE
+                || Long.bitCount(blackLo & ADJACENT_LO[THRONE.index()]) == 3;
+        }
+    }
+
+    /** Capture the piece on the square with index BTW, next to the square
+     *  just moved to in direction DIR, assuming the necessary conditions
+     *  on the square beyond it are satisfied.  The king is taken by
+     *  surrounding it on two sides, unless it is on or next to the throne,
+     *  where all four sides (three beside the throne) are needed. */
+    private void capture(int btw, int dir) {
+        Piece victim = get(btw);
+        if (victim == EMPTY || victim == _turn) {
+            return;
+        } else if (victim != KING) {
+            recordCapture(btw, dir, false);
+        } else if (btw >= WORD_BITS
+                   || (NEAR_THRONE_LO & bit(btw)) == 0) {
+            recordCapture(btw, dir, true);
             _winner = _turn;
-        } else if (btw == kingPosition()) {
-            Square sqN = kingPosition().rookMove(0, 1);
-            Square sqE = kingPosition().rookMove(1, 1);
-            Square sqS = kingPosition().rookMove(2, 1);
-            Square sqW = kingPosition().rookMove(3, 1);
-            if (kingPosition() == NTHRONE || kingPosition() == STHRONE
-                || kingPosition() == WTHRONE || kingPosition() == ETHRONE
-                    || kingPosition() == THRONE) {
-                if (get(sqN) == _turn && get(sqW) == _turn
-                        && get(sqE) == _turn && get(sqS) == _turn) {
-                    _stacksqcap.push(btw);
-                    _stackpiececap.push(get(btw));
-                    _stackmvcountcap.push(_moveCount);
-                    put(EMPTY, btw);
-                    _winner = _turn;
-                } else if (kingPosition() == NTHRONE
-                        || kingPosition() == STHRONE
-                    || kingPosition() == WTHRONE
-                        || kingPosition() == ETHRONE) {
-                    if (get(sqN) != _turn && get(sqW) == _turn
-                            && get(sqE) == _turn && get(sqS) == _turn
-                            || get(sqN) == _turn && get(sqW) != _turn
-                            && get(sqE) == _turn && get(sqS) == _turn
-                            || get(sqN) == _turn && get(sqW) == _turn
-                            && get(sqE) != _turn && get(sqS) == _turn
-                            || get(sqN) == _turn && get(sqW) == _turn
-                            && get(sqE) == _turn && get(sqS) != _turn) {
-                        _stacksqcap.push(btw);
-                        _stackpiececap.push(get(btw));
-                        _stackmvcountcap.push(_moveCount);
-                        put(EMPTY, btw);
-                        _winner = _turn;
-                    }
-                }
+        } else {
+            int surrounding = adjacentCount(_turn, btw);
+            if (surrounding == 4
+                || (btw != THRONE.index() && surrounding == 3)) {
+                recordCapture(btw, dir, true);
+                _winner = _turn;
             }
         }
     }
 
-    /** Undo one move.  Has no effect on the initial board. */
+    /** Remove the piece on the square with index BTW, which is next to
+     *  the square just moved to in direction DIR, noting in the current
+     *  undo record that it was captured (and was the king iff KING). */
+    private void recordCapture(int btw, int dir, boolean king) {
+        int rec = _journal[_journalTop - RECORD_SIZE];
+        rec |= 1 << (CAPTURE_SHIFT + dir);
+        if (king) {
+            rec |= KING_CAPTURED | (dir << KING_DIR_SHIFT);
+        }
+        _journal[_journalTop - RECORD_SIZE] = rec;
+        put(EMPTY, btw);
+    }
+
+    /** Undo one move.  Has no effect on the initial board, or once the
+     *  undo information has been cleared. */
     void undo() {
-        if (_moveCount > 0) {
-            undoPosition();
-            int count = 0;
-            int countcap = 0;
-            if (_stackpiece.size() != 0 && _stacksq.size() != 0
-                    && _stackmvcount.size() != 0) {
-                Square currsq = _stacksq.pop();
-                Piece currpiece = _stackpiece.pop();
-                Square nextsq = _stacksq.pop();
-                Piece nextpiece = _stackpiece.pop();
-                count = _stackmvcount.pop();
-                count = _stackmvcount.pop();
-                put(nextpiece, currsq);
-                put(currpiece, nextsq);
-            }
-            if (_stackmvcountcap.size() != 0) {
-                countcap = _stackmvcountcap.pop();
-                while (countcap >= count) {
-                    if (_stacksqcap.size() != 0 && _stackpiececap.size() != 0) {
-                        Square currsqcap = _stacksqcap.pop();
-                        Piece currpcap = _stackpiececap.pop();
-                        put(currpcap, currsqcap);
-                    }
-                    if (_stackmvcountcap.size() != 0) {
-                        countcap = _stackmvcountcap.pop();
+        if (_moveCount > 0 && _journalTop > 0) {
+            int rec = _journal[_journalTop - RECORD_SIZE];
+            if ((rec & NULL_MOVE) == 0) {
+                undoPosition();
+                int from = rec & SQUARE_BITS,
+                    to = (rec >>> TO_SHIFT) & SQUARE_BITS;
+                Piece moved = get(to);
+                put(EMPTY, to);
+                put(moved, from);
+                for (int dir = 0; dir < 4; dir += 1) {
+                    if ((rec & (1 << (CAPTURE_SHIFT + dir))) != 0) {
+                        boolean king = (rec & KING_CAPTURED) != 0
+                            && ((rec >>> KING_DIR_SHIFT) & 3) == dir;
+                        put(king ? KING : _turn, ROOK_INDICES[to][dir][0]);
                     }
                 }
             }
+            _journalTop -= RECORD_SIZE;
+            int winner = (rec >>> WINNER_SHIFT) & WINNER_BITS;
+            _winner = winner == 0 ? null : PIECES[winner - 1];
+            _repeated = (rec & REPEATED) != 0;
+            _hash = ((long) _journal[_journalTop + 1] << WORD_SHIFT)
+                | (_journal[_journalTop + 2] & LOW_INT_MASK);
+            _moveCount -= 1;
+            _turn = _turn.opponent();
         }
     }
 
+    /** Pass: make it the other side's turn without moving anything.  This
+     *  is not a legal move in the game; it is for the search, which uses
+     *  it to ask whether a position would be good even if the side to move
+     *  did nothing (null-move pruning).  Undone by undo like any move.  The
+     *  position reached is not recorded for detecting repetitions, but
+     *  the pass counts towards the move limit, as a move would. */
+    void makeNullMove() {
+        pushUndoRecord(0, 0);
+        _journal[_journalTop - RECORD_SIZE] |= NULL_MOVE;
+        _moveCount += 1;
+        _repeated = false;
+        _turn = _turn.opponent(); _hash ^= BLACK_TO_MOVE;
+        if (_moveCount >= _moveLimit) {
+            _winner = WHITE;
+        }
+    }
+
+    /** Start the undo record for the move between the squares with
+     *  indices FROM and TO, saving the winner,
+     *  repetition status and key of the current position.  Captures made
+     *  by the move are added to the record as they happen. */
+    private void pushUndoRecord(int from, int to) {
+        if (_journalTop + RECORD_SIZE > _journal.length) {
+            _journal = Arrays.copyOf(_journal, 2 * _journal.length);
+        }
+        int winner = _winner == null ? 0 : _winner.ordinal() + 1;
+        _journal[_journalTop] = from | (to << TO_SHIFT)
+            | (winner << WINNER_SHIFT) | (_repeated ? REPEATED : 0);
+        _journal[_journalTop + 1] = (int) (_hash >>> WORD_SHIFT);
+        _journal[_journalTop + 2] = (int) _hash;
+        _journalTop += RECORD_SIZE;
+    }
+
     /** Remove record of current position in the set of positions encountered,
      *  unless it is a repeated position or we are at the first move. */
     private void undoPosition() {
         if (moveCount() > 1 || !_repeated) {
-            String currstate = this.encodedBoard();
-            for (int i = 0; i < _states.size(); i += 1) {
-                String astate = _states.get(i);
-                if (currstate.equals(astate)) {
-                    _states.remove(i);
-                    break;
-                }
-            }
+            _history.remove(_hash);
         }
         _repeated = false;
     }
 
+    /** Empty the board and make it TURN's move, with no winner, no
+     *  history and no move limit, ready for pieces to be put on it. */
+    void clear(Piece turn) {
+        _blackLo = _blackHi = _whiteLo = _whiteHi = 0;
+        _king = -1;
+        _whiteCount = _blackCount = 0;
+        _turn = turn;
+        _hash = turn == BLACK ? BLACK_TO_MOVE : 0;
+        _winner = null;
+        _repeated = false;
+        _moveCount = 0;
+        _moveLimit = Integer.MAX_VALUE;
+        _history.clear();
+        _journalTop = 0;
+    }
+
     /** Clear the undo stack and board-position counts. Does not modify the
      *  current position or win status. */
     void clearUndo() {
-        _stacksq = new ArrayDeque<Square>();
-        _stackpiece = new ArrayDeque<Piece>();
-        _stackmvcount = new ArrayDeque<Integer>();
-        _stacksqcap = new ArrayDeque<Square>();
-        _stackpiececap = new ArrayDeque<Piece>();
-        _stackmvcountcap = new ArrayDeque<Integer>();
+        _journalTop = 0;
     }
 
     /** Return a new mutable list of all legal moves on the current board for
      *  SIDE (ignoring whose turn it is at the moment). */
     List<Move> legalMoves(Piece side) {
-        boolean eq = true;
-        if (_turn != side) {
-            eq = false;
-            _turn = side;
-        }
-        List<Move> moves = new ArrayList<Move>();
-        HashSet<Square> sqloc = pieceLocations(side);
-        Iterator<Square> sqiter = sqloc.iterator();
-        while (sqiter.hasNext()) {
-            Square currsqs = sqiter.next();
-            for (int i = 0; i < SIZE; i += 1) {
-                Square sqN = currsqs.rookMove(0, i);
-                Square sqE = currsqs.rookMove(1, i);
-                Square sqS = currsqs.rookMove(2, i);
-                Square sqW = currsqs.rookMove(3, i);
-                if (sqN != null && isLegal(currsqs, sqN)) {
-                    Move currmv = mv(currsqs, sqN);
-                    moves.add(currmv);
-                }
-                if (sqE != null && isLegal(currsqs, sqE)) {
-                    Move currmv = mv(currsqs, sqE);
-                    moves.add(currmv);
-                }
-                if (sqS != null && isLegal(currsqs, sqS)) {
-                    Move currmv = mv(currsqs, sqS);
-                    moves.add(currmv);
-                }
-                if (sqW != null && isLegal(currsqs, sqW)) {
-                    Move currmv = mv(currsqs, sqW);
-                    moves.add(currmv);
+        int[] buffer = moveBuffer();
+        int n = legalMoves(side, buffer);
+        List<Move> moves = new ArrayList<Move>(n);
+        for (int k = 0; k < n; k += 1) {
+            moves.add(Move.unpack(buffer[k]));
+        }
+        return moves;
+    }
+
+    /** Store all legal moves on the current board for SIDE (ignoring whose
+     *  turn it is at the moment) into MOVES as packed moves (see
+     *  Move.pack), and return how many there are.  MOVES must have room
+     *  for MAX_MOVES entries.  Each ray from each piece is walked once,
+     *  outward, stopping at the first occupied square. */
+    int legalMoves(Piece side, int[] moves) {
+        int n = 0;
+        long lo = side == BLACK ? _blackLo : _whiteLo,
+            hi = side == BLACK ? _blackHi : _whiteHi;
+        for (; lo != 0; lo &= lo - 1) {
+            n = addMoves(Long.numberOfTrailingZeros(lo), false, moves, n);
+        }
+        for (; hi != 0; hi &= hi - 1) {
+            n = addMoves(WORD_BITS + Long.numberOfTrailingZeros(hi), false,
+                         moves, n);
+        }
+        if (side == WHITE && _king >= 0) {
+            n = addMoves(_king, true, moves, n);
+        }
+        return n;
+    }
+
+    /** Append to MOVES, starting at MOVES[N], the legal moves of the piece
+     *  on the square with index FROM, which is the king iff KING.  Return
+     *  the new number of moves. */
+    private int addMoves(int from, boolean king, int[] moves, int n) {
+        int throne = THRONE.index();
+        int[][] rays = ROOK_INDICES[from];
+        for (int dir = 0; dir < rays.length; dir += 1) {
+            int[] ray = rays[dir];
+            for (int k = 0; k < ray.length; k += 1) {
+                int to = ray[k];
+                if (occupied(to)) {
+                    break;
+                } else if (to != throne || king) {
+                    moves[n] = Move.pack(from, to);
+                    n += 1;
                 }
             }
         }
-        if (!eq) {
-            _turn = side.opponent();
-        }
-        return moves;
+        return n;
     }
 
     /** Return true iff SIDE has a legal move. */
     boolean hasMove(Piece side) {
-        boolean moves = false;
-        if (legalMoves(side).size() > 0) {
-            moves = true;
+        return legalMoves(side, moveBuffer()) > 0;
+    }
+
+    /** Return true iff the legal packed move MOVE (see Move.pack), made by
+     *  the side to move, takes the king to the edge or closes on an enemy
+     *  piece against a partner or a hostile throne, under the same
+     *  conditions as makeMove uses for captures.  Closing on the king
+     *  counts even where more attackers are needed to take it.  Used for
+     *  move ordering, so it only looks at the four neighbours of the
+     *  destination and does not make the move. */
+    boolean isTactical(int move) {
+        int from = Move.packedFrom(move), to = Move.packedTo(move);
+        if (from == _king && sq(to).isEdge()) {
+            return true;
         }
-        return moves;
+        long blackLo = _blackLo;
+        if (_turn == BLACK && from < WORD_BITS) {
+            blackLo &= ~bit(from);
+        }
+        Piece enemy = _turn.opponent();
+        int[][] rays = ROOK_INDICES[to];
+        for (int dir = 0; dir < rays.length; dir += 1) {
+            int[] ray = rays[dir];
+            if (ray.length < 2) {
+                continue;
+            }
+            int btw = ray[0];
+            if ((holds(enemy, btw) || (btw == _king && _turn == BLACK))
+                && isAnvil(to, ray[1], blackLo)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return a scratch buffer for move generation. */
+    private int[] moveBuffer() {
+        if (_moveBuffer == null) {
+            _moveBuffer = new int[MAX_MOVES];
+        }
+        return _moveBuffer;
     }
 
     @Override
@@ -548,18 +682,39 @@ class Board {
         return out.toString();
     }
 
-    /** Return the locations of all pieces on SIDE. */
+    /** Store the indices of the squares holding ordinary pieces of SIDE
+     *  (WHITE or BLACK; the king is not included) into SQUARES in
+     *  increasing order, and return how many there are. */
+    int squares(Piece side, int[] squares) {
+        int n = 0;
+        long lo = side == BLACK ? _blackLo : _whiteLo,
+            hi = side == BLACK ? _blackHi : _whiteHi;
+        for (; lo != 0; lo &= lo - 1) {
+            squares[n] = Long.numberOfTrailingZeros(lo);
+            n += 1;
+        }
+        for (; hi != 0; hi &= hi - 1) {
+            squares[n] = WORD_BITS + Long.numberOfTrailingZeros(hi);
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Return the locations of all pieces on SIDE.  The king belongs to
+     *  WHITE. */
     private HashSet<Square> pieceLocations(Piece side) {
         assert side != EMPTY;
         HashSet<Square> setploc = new HashSet<Square>();
-        for (int i = 0; i < _board.length; i += 1) {
-            for (int j = 0; j < _board.length; j += 1) {
-                Piece currp = _board[i][j];
-                if (currp == side || currp == KING) {
-                    Square currsq = sq(i, j);
-                    setploc.add(currsq);
-                }
-            }
+        long lo = side == BLACK ? _blackLo : _whiteLo,
+            hi = side == BLACK ? _blackHi : _whiteHi;
+        for (; lo != 0; lo &= lo - 1) {
+            setploc.add(sq(Long.numberOfTrailingZeros(lo)));
+        }
+        for (; hi != 0; hi &= hi - 1) {
+            setploc.add(sq(WORD_BITS + Long.numberOfTrailingZeros(hi)));
+        }
+        if (side == WHITE && _king >= 0) {
+            setploc.add(sq(_king));
         }
         return setploc;
     }
@@ -573,14 +728,121 @@ class Board {
     /** Return the contents of _board in the order of SQUARE_LIST as a sequence
      *  of characters: the toString values of the current turn and Pieces. */
     String encodedBoard() {
-        char[] result = new char[Square.SQUARE_LIST.size() + 1];
+        char[] result = new char[NUM_SQUARES + 1];
         result[0] = turn().toString().charAt(0);
-        for (Square sq : SQUARE_LIST) {
-            result[sq.index() + 1] = get(sq).toString().charAt(0);
+        Arrays.fill(result, 1, result.length, EMPTY.toString().charAt(0));
+        encode(result, _blackLo, _blackHi, BLACK);
+        encode(result, _whiteLo, _whiteHi, WHITE);
+        if (_king >= 0) {
+            result[_king + 1] = KING.toString().charAt(0);
         }
         return new String(result);
     }
 
+    /** Write the symbol for P into RESULT (offset by one for the turn) at
+     *  each square whose bit is set in the mask LO, HI. */
+    private static void encode(char[] result, long lo, long hi, Piece p) {
+        char c = p.toString().charAt(0);
+        for (; lo != 0; lo &= lo - 1) {
+            result[Long.numberOfTrailingZeros(lo) + 1] = c;
+        }
+        for (; hi != 0; hi &= hi - 1) {
+            result[WORD_BITS + Long.numberOfTrailingZeros(hi) + 1] = c;
+        }
+    }
+
+    /** Return the single-bit mask for the square with index INDEX within
+     *  the word (low or high) that holds it. */
+    private static long bit(int index) {
+        return 1L << (index & (WORD_BITS - 1));
+    }
+
+    /** ZOBRIST[p][i] is the random key XORed into the position key when
+     *  the square with index i holds the Piece with ordinal p.  The keys
+     *  for EMPTY are zero. */
+    private static final long[][] ZOBRIST =
+        new long[Piece.values().length][NUM_SQUARES];
+
+    /** Key XORed into the position key when BLACK is to move. */
+    private static final long BLACK_TO_MOVE;
+
+    /** Seed for the Zobrist keys, fixed so that keys (and anything stored
+     *  under them) are the same from run to run. */
+    private static final long ZOBRIST_SEED = 0x5EEDFACEL;
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (Piece p : Piece.values()) {
+            if (p != EMPTY) {
+                for (int i = 0; i < NUM_SQUARES; i += 1) {
+                    ZOBRIST[p.ordinal()][i] = keys.nextLong();
+                }
+            }
+        }
+        BLACK_TO_MOVE = keys.nextLong();
+    }
+
+    /** An upper bound on the number of legal moves in any position: each
+     *  empty square can be reached only by the nearest piece in each of the
+     *  four directions. */
+    static final int MAX_MOVES = 4 * NUM_SQUARES;
+
+    /** The Pieces, indexed by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
+
+    /** Number of squares held in the low word of each occupancy mask. */
+    private static final int WORD_BITS = 64;
+
+    /** ADJACENT_LO[i] and ADJACENT_HI[i] are the masks of the squares
+     *  orthogonally adjacent to the square with index i. */
+    private static final long[]
+        ADJACENT_LO = new long[NUM_SQUARES],
+        ADJACENT_HI = new long[NUM_SQUARES];
+
+    static {
+        for (Square s : SQUARE_LIST) {
+            for (int dir = 0; dir < 4; dir += 1) {
+                Square n = s.rookMove(dir, 1);
+                if (n == null) {
+                    continue;
+                } else if (n.index() < WORD_BITS) {
+                    ADJACENT_LO[s.index()] |= bit(n.index());
+                } else {
+                    ADJACENT_HI[s.index()] |= bit(n.index());
+                }
+            }
+        }
+    }
+
+    /** Mask of the throne and the four squares next to it (all of which
+     *  lie in the low word). */
+    private static final long NEAR_THRONE_LO =
+        bit(THRONE.index()) | ADJACENT_LO[THRONE.index()];
+
+    /** Mask of the squares two steps from the throne, from which a move
+     *  may capture against it. */
+    private static final long THRONE_RING_LO;
+
+    static {
+        long ring = 0;
+        for (int dir = 0; dir < 4; dir += 1) {
+            ring |= bit(THRONE.rookMove(dir, 2).index());
+        }
+        THRONE_RING_LO = ring;
+    }
+
+    /** EDGE_DISTANCE[i] is the number of steps from the square with index i
+     *  to the nearest edge. */
+    private static final int[] EDGE_DISTANCE = new int[NUM_SQUARES];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Square s = sq(i);
+            EDGE_DISTANCE[i] = Math.min(Math.min(s.row(), SIZE - 1 - s.row()),
+                                        Math.min(s.col(), SIZE - 1 - s.col()));
+        }
+    }
+
     /** Piece whose turn it is (WHITE or BLACK). */
     private Piece _turn;
     /** Cached value of winner on this board, or null if it has not been
@@ -590,24 +852,58 @@ class Board {
     private int _moveCount;
     /** True when current board is a repeated position (ending the game). */
     private boolean _repeated;
-    /** A Piece 2D array representation of the board. */
-    private Piece [][] _board;
+    /** Occupancy masks of the attackers (black) and of the defenders
+     *  (white) other than the king.  Bit k of a LO word stands for the
+     *  square with index k; bit k of a HI word for the square with index
+     *  WORD_BITS + k. */
+    private long _blackLo, _blackHi, _whiteLo, _whiteHi;
+    /** Index of the king's square, or -1 if there is no king. */
+    private int _king;
+    /** Numbers of ordinary white and black pieces on the board. */
+    private int _whiteCount, _blackCount;
     /** Integer representing the limit of moves in a game. */
     private int _moveLimit;
-    /** A Stack of squares. */
-    private Deque<Square> _stacksq;
-    /** A Stack of pieces. */
-    private Deque<Piece> _stackpiece;
-    /** A Stack of number of (still undone) moves since initial position.. */
-    private Deque<Integer> _stackmvcount;
-    /** List of a string representation of the board and it's turn attribute. */
-    private List<String> _states;
-    /** A stack of squares where pieces were captured. */
-    private Deque<Square> _stacksqcap;
-    /** A stack of pieces that were captured. */
-    private Deque<Piece> _stackpiececap;
-    /** A stack of numbers representing the number of (still undone)
-     *  moves engaging in a capture since initial position.
-     */
-    private Deque<Integer> _stackmvcountcap;
+    /** Keys of the positions reached since the initial position. */
+    private final PositionHistory _history = new PositionHistory();
+    /** Zobrist key of the current position. */
+    private long _hash;
+    /** The undo journal: RECORD_SIZE ints for each move not yet undone.
+     *  The first packs the move's from and to square indices, a bit for
+     *  each direction (from the to square) in which a piece was captured,
+     *  whether and in which direction the king was captured, and the
+     *  previous winner and repetition flag.  The other two hold the high
+     *  and low halves of the previous position key. */
+    private int[] _journal = new int[INITIAL_JOURNAL_SIZE];
+    /** Number of ints in use in _journal. */
+    private int _journalTop;
+    /** Scratch buffer used by legalMoves(Piece) and hasMove, or null if
+     *  not yet needed. */
+    private int[] _moveBuffer;
+
+    /** Number of ints in one undo record. */
+    private static final int RECORD_SIZE = 3;
+    /** Initial length of _journal. */
+    private static final int INITIAL_JOURNAL_SIZE = 64 * RECORD_SIZE;
+    /** Mask for a square index within an undo record. */
+    private static final int SQUARE_BITS = 0x7f;
+    /** Bit position of the to-square index within an undo record. */
+    private static final int TO_SHIFT = 7;
+    /** Bit position of the four direction-of-capture bits. */
+    private static final int CAPTURE_SHIFT = 14;
+    /** Set in an undo record when the move captured the king. */
+    private static final int KING_CAPTURED = 1 << 18;
+    /** Bit position of the two-bit direction of a king capture. */
+    private static final int KING_DIR_SHIFT = 19;
+    /** Bit position of the previous winner (ordinal + 1, or 0). */
+    private static final int WINNER_SHIFT = 21;
+    /** Mask for the previous winner after shifting. */
+    private static final int WINNER_BITS = 0x7;
+    /** Set in an undo record when the previous position was a repeat. */
+    private static final int REPEATED = 1 << 24;
+    /** Set in an undo record for a null move (see makeNullMove). */
+    private static final int NULL_MOVE = 1 << 25;
+    /** Shift between the halves of a key stored in the journal. */
+    private static final int WORD_SHIFT = 32;
+    /** Mask for the low half of a key stored in the journal. */
+    private static final long LOW_INT_MASK = 0xffffffffL;
 }
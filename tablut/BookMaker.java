@@ -0,0 +1,104 @@
+package tablut;
+
+import java.io.IOException;
+import java.util.List;
+
+import ucb.util.CommandArgs;
+
+/** Makes opening books (see OpeningBook) from self-play:
+ *  <pre>
+ *      java tablut.BookMaker FILE [--games=N] [--plies=N] [--seed=N]
+ *          [--random=N] [--threads=N] [--limit=N]
+ *  </pre>
+ *  plays N games (each beginning with --random random moves, so that the
+ *  games differ), and for each of the first --plies moves of each game,
+ *  other than the random ones, credits the move with one point if the
+ *  side that made it went on to win.  The random moves are not credited,
+ *  since they were not chosen for their merit.  Moves that never led to
+ *  a win are left out.  The AIs play the rest of each game
+ *  deterministically, so the random moves are all that tell the games
+ *  apart: one random move allows only as many distinct games as there are
+ *  first moves, and each further one multiplies that by the number of
+ *  replies.
+ *  @author Citlalli Villarreal
+ */
+final class BookMaker {
+
+    /** Default number of games played to build a book. */
+    static final int DEFAULT_GAMES = 200;
+    /** Default number of moves from each game put in a book. */
+    static final int DEFAULT_PLIES = 8;
+    /** Default number of random moves at the start of each game. */
+    static final int DEFAULT_RANDOM = 2;
+
+    /** Credit, in BUILDER, each of the first PLIES moves in the game whose
+     *  result is GAME, except the first RANDOM, which were played at
+     *  random, with a point if the side making it won. */
+    static void addGame(OpeningBook.Builder builder, Tournament.Result game,
+                        int plies, int random) {
+        Board board = new Board();
+        int[] moves = game.moves();
+        for (int k = 0; k < plies && k < moves.length; k += 1) {
+            if (k >= random) {
+                int weight = board.turn() == game.winner() ? 1 : 0;
+                builder.add(board.hashKey(), moves[k], weight);
+            }
+            board.makeMove(moves[k]);
+        }
+    }
+
+    /** Build a book as described in the class comment, according to
+     *  ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games=(\\d+){0,1} --plies=(\\d+){0,1}"
+                            + " --seed=(\\d+){0,1} --random=(\\d+){0,1}"
+                            + " --threads=(\\d+){0,1} --limit=(\\d+){0,1}"
+                            + " --={1}", args);
+        if (!options.ok()) {
+            Utils.fatal("Usage: java tablut.BookMaker FILE [--games=N]"
+                        + " [--plies=N] [--seed=N] [--random=N]"
+                        + " [--threads=N] [--limit=N]%n");
+        }
+        String fileName = options.getFirst("--");
+        try {
+            int games = intOption(options, "--games", DEFAULT_GAMES);
+            int plies = intOption(options, "--plies", DEFAULT_PLIES);
+            int random = intOption(options, "--random", DEFAULT_RANDOM);
+            int threads = intOption(options, "--threads",
+                                    Runtime.getRuntime()
+                                    .availableProcessors());
+            int limit = intOption(options, "--limit",
+                                  Tournament.DEFAULT_LIMIT);
+            long seed = options.contains("--seed")
+                ? Long.parseLong(options.getFirst("--seed")) : 0;
+            Tournament tournament =
+                new Tournament(games, limit, seed, random,
+                               Tournament.newController(),
+                               Tournament.newController());
+            List<Tournament.Result> results =
+                tournament.playAll(Math.max(1, threads));
+            OpeningBook.Builder builder = new OpeningBook.Builder();
+            for (Tournament.Result game : results) {
+                addGame(builder, game, plies, random);
+            }
+            int count = builder.write(fileName);
+            System.out.printf("Wrote %d entries to %s.%n", count, fileName);
+        } catch (NumberFormatException excp) {
+            Utils.fatal("number too large%n");
+        } catch (IOException excp) {
+            Utils.fatal("Could not write %s: %s%n", fileName,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the value of integer option NAME in OPTIONS, or DEFLT if it
+     *  is absent. */
+    private static int intOption(CommandArgs options, String name,
+                                 int deflt) {
+        if (!options.contains(name)) {
+            return deflt;
+        }
+        return Integer.parseInt(options.getFirst(name));
+    }
+}
@@ -1,8 +1,10 @@
 package tablut;
 
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.function.Consumer;
@@ -28,10 +30,22 @@ final class Controller {
     Controller(View view, PrintStream logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
                boolean strict) {
+        this(view, logFile, reporter, manualPlayerTemplate,
+             autoPlayerTemplate, strict, System.in, System.out);
+    }
+
+    /** A Controller as for the other constructor, but reading commands
+     *  from INPUT and writing prompts, dumps and perft reports to OUTPUT
+     *  rather than the standard input and output, so that several games
+     *  may run in one program (see Server). */
+    Controller(View view, PrintStream logFile, Reporter reporter,
+               Player manualPlayerTemplate, Player autoPlayerTemplate,
+               boolean strict, InputStream input, PrintStream output) {
         _view = view;
         _playing = false;
         _logFile = logFile;
-        _input = new Scanner(System.in);
+        _input = new Scanner(input);
+        _output = output;
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
@@ -70,11 +84,19 @@ final class Controller {
                 }
             }
         }
+        stopPlayers();
         if (_logFile != null) {
             _logFile.close();
         }
     }
 
+    /** Stop any background work of both players (see Player.stop), because
+     *  the game is over or is being replaced. */
+    private void stopPlayers() {
+        _white.stop();
+        _black.stop();
+    }
+
     /** Return the current board.  The value returned should not be
      *  modified. */
     Board board() {
@@ -96,13 +118,236 @@ final class Controller {
         _randGen.setSeed(seed);
     }
 
+    /** Return the size, in megabytes, of the transposition table each
+     *  automated player should use. */
+    int tableSize() {
+        return _tableSize;
+    }
+
+    /** Have automated players use transposition tables of MEGABYTES
+     *  megabytes from their next move on. */
+    void setTableSize(int megabytes) {
+        if (megabytes < 0) {
+            throw error("table size must be non-negative");
+        }
+        _tableSize = megabytes;
+    }
+
+    /** Return the time budget, in milliseconds, for each move by an
+     *  automated player, or 0 if they search to a fixed depth instead. */
+    long moveTime() {
+        return _moveTime;
+    }
+
+    /** Give automated players MILLIS milliseconds per move (0 for a fixed
+     *  search depth). */
+    void setMoveTime(long millis) {
+        if (millis < 0) {
+            throw error("time must be non-negative");
+        }
+        _moveTime = millis;
+    }
+
+    /** Return the evaluation function automated players should use. */
+    Evaluator evaluator() {
+        return _evaluator;
+    }
+
+    /** Have automated players score positions with EVALUATOR from their
+     *  next move on. */
+    void setEvaluator(Evaluator evaluator) {
+        _evaluator = evaluator;
+    }
+
+    /** Return the opening book automated players should consult, or null
+     *  if there is none. */
+    OpeningBook openingBook() {
+        return _openingBook;
+    }
+
+    /** Have automated players play from BOOK (null for none) when it has a
+     *  move for the current position. */
+    void setOpeningBook(OpeningBook book) {
+        _openingBook = book;
+    }
+
+    /** Return the endgame tablebase automated players should consult, or
+     *  null if there is none. */
+    Tablebase tablebase() {
+        return _tablebase;
+    }
+
+    /** Have automated players play from TABLEBASE (null for none) when it
+     *  covers the current position. */
+    void setTablebase(Tablebase tablebase) {
+        _tablebase = tablebase;
+    }
+
+    /** Return the pool on which automated players should run their
+     *  searches, or null if they should search on the calling thread. */
+    ExecutorService searchPool() {
+        return _searchPool;
+    }
+
+    /** Have automated players run their searches on POOL (null for the
+     *  calling thread).  A pool shared by many controllers bounds the
+     *  number of searches running at once. */
+    void setSearchPool(ExecutorService pool) {
+        _searchPool = pool;
+    }
+
+    /** Return true iff automated players should reduce the depth of
+     *  quiet moves that are ordered late (late-move reductions). */
+    boolean lateMoveReductions() {
+        return _lateMoveReductions;
+    }
+
+    /** Have automated players use late-move reductions iff ON. */
+    void setLateMoveReductions(boolean on) {
+        _lateMoveReductions = on;
+    }
+
+    /** Return true iff automated players should use null-move
+     *  pruning. */
+    boolean nullMove() {
+        return _nullMove;
+    }
+
+    /** Have automated players use null-move pruning iff ON. */
+    void setNullMove(boolean on) {
+        _nullMove = on;
+    }
+
+    /** Return true iff automated players should think on their
+     *  opponents' time when the opponent is a manual player
+     *  (pondering). */
+    boolean ponder() {
+        return _ponder;
+    }
+
+    /** Have automated players ponder iff ON. */
+    void setPonder(boolean on) {
+        if (on && _shared) {
+            throw error("shared sessions cannot ponder");
+        }
+        _ponder = on;
+    }
+
+    /** Return true iff I am one of many sessions sharing one program and
+     *  search pool (see Server). */
+    boolean shared() {
+        return _shared;
+    }
+
+    /** Make me a shared session iff SHARED.  So that a session can use no
+     *  threads or time outside the shared search pool, a shared session
+     *  searches with one thread, does not ponder, and refuses perft deeper
+     *  than MAX_SHARED_PERFT_DEPTH. */
+    void setShared(boolean shared) {
+        _shared = shared;
+        if (shared) {
+            _threads = 1;
+            _ponder = false;
+        }
+    }
+
+    /** Return the number of milliseconds after which automated players
+     *  must cut off their searches and move, whatever their time budget or
+     *  depth limit, or 0 for no such deadline. */
+    long searchDeadline() {
+        return _searchDeadline;
+    }
+
+    /** Have automated players cut off their searches after MILLIS
+     *  milliseconds (0 for never).  Unlike the time budget (see
+     *  setMoveTime), this also applies to fixed-depth searches and counts
+     *  time spent waiting for a shared search pool. */
+    void setSearchDeadline(long millis) {
+        if (millis < 0) {
+            throw error("search deadline must be non-negative");
+        }
+        _searchDeadline = millis;
+    }
+
+    /** Have the automated player now searching, if any, stop at once and
+     *  make the best move it has found so far.  May be called from any
+     *  thread; commands are read only between moves, so this is how a
+     *  window or server interrupts a long search. */
+    void abortSearch() {
+        _white.cancelMove();
+        _black.cancelMove();
+    }
+
+    /** Give me the same settings for automated players as MODEL. */
+    void copySettings(Controller model) {
+        setTableSize(model.tableSize());
+        setMoveTime(model.moveTime());
+        setThreads(model.threads());
+        setEvaluator(model.evaluator());
+        setOpeningBook(model.openingBook());
+        setTablebase(model.tablebase());
+        setSearchPool(model.searchPool());
+        setLateMoveReductions(model.lateMoveReductions());
+        setNullMove(model.nullMove());
+        setPonder(model.ponder());
+        setSearchDeadline(model.searchDeadline());
+    }
+
+    /** Record STATS, the statistics of an automated player's search for
+     *  its latest move: keep them for the "stats" command, report them as
+     *  a note if "stats on" is in effect, and write them to the
+     *  statistics log, if any. */
+    void recordStats(SearchStats stats) {
+        if (stats == null) {
+            return;
+        }
+        _lastStats = stats;
+        _gameStats.add(stats);
+        if (_statsNotes) {
+            reportNote("%s", stats);
+        }
+        if (_statsLog != null) {
+            _statsLog.println(_statsJson ? stats.toJson() : stats.toCsv());
+            _statsLog.flush();
+        }
+    }
+
+    /** Write the statistics of each automated move to LOG, as JSON lines
+     *  if JSON and otherwise as CSV lines after a header (see
+     *  SearchStats).  LOG may be null for none. */
+    void setStatsLog(PrintStream log, boolean json) {
+        _statsLog = log;
+        _statsJson = json;
+        if (log != null && !json) {
+            log.println(SearchStats.CSV_HEADER);
+        }
+    }
+
+    /** Return the number of threads each automated player should search
+     *  with. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Have automated players search with COUNT threads. */
+    void setThreads(int count) {
+        if (count < 1 || count > MAX_THREADS) {
+            throw error("thread count must be between 1 and %d",
+                        MAX_THREADS);
+        }
+        if (count != 1 && _shared) {
+            throw error("shared sessions search with one thread");
+        }
+        _threads = count;
+    }
+
     /** Return the next line of input, or null if there is no more. First
      *  prompts for the line.  Trims the returned line (if any) of all
      *  leading and trailing whitespace. First issues a prompt iff PROMPT. */
     String readLine(boolean prompt) {
         if (prompt) {
-            System.out.print("> ");
-            System.out.flush();
+            _output.print("> ");
+            _output.flush();
         }
         if (_input.hasNextLine()) {
             return _input.nextLine().trim();
@@ -146,19 +391,20 @@ final class Controller {
     }
 
     /** A Command is pair (<pattern>, <processor>), where <pattern> is a
-     *  Matcher that matches instances of a particular command, and
+     *  Pattern that matches instances of a particular command, and
      *  <processor> is a functional object whose .accept method takes a
      *  successfully matched Matcher and performs some operation. */
     private static class Command {
         /** A new Command that matches PATN (a regular expression) and uses
          *  PROCESSOR to process commands that match the pattern. */
         Command(String patn, Consumer<Matcher> processor) {
-            _matcher = Pattern.compile(patn).matcher("");
+            _pattern = Pattern.compile(patn);
             _processor = processor;
         }
 
-        /** A Matcher matching my pattern. */
-        protected final Matcher _matcher;
+        /** My pattern.  Patterns are immutable, so commands hold no state
+         *  between uses. */
+        protected final Pattern _pattern;
         /** The function object that implements my command. */
         protected final Consumer<Matcher> _processor;
     }
@@ -174,12 +420,20 @@ final class Controller {
         new Command("manual\\s+(white|black)$", this::doManual),
         new Command("auto\\s+(white|black)$", this::doAuto),
         new Command("limit\\s+(\\d+)$", this::doLimit),
+        new Command("time\\s+(\\d+)$", this::doTime),
+        new Command("deadline\\s+(\\d+)$", this::doDeadline),
+        new Command("threads\\s+(\\d+)$", this::doThreads),
+        new Command("stats(?:\\s+(on|off))?$", this::doStats),
+        new Command("lmr\\s+(on|off)$", this::doLateMoveReductions),
+        new Command("nullmove\\s+(on|off)$", this::doNullMove),
+        new Command("ponder\\s+(on|off)$", this::doPonder),
+        new Command("perft\\s+(\\d+)(\\s+divide)?$", this::doPerft),
         new Command("toggle\\s+" + SQ + "$", this::doToggle),
         new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
     };
 
-    /** A Matcher whose Pattern matches comments. */
-    private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
+    /** A Pattern that matches comments. */
+    private static final Pattern COMMENT = Pattern.compile("#.*");
 
     /** Check that CMND is one of the valid Tablut commands and execute it, if
      *  so, raising an IllegalArgumentException otherwise. */
@@ -189,16 +443,15 @@ final class Controller {
             _logFile.flush();
         }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
+        cmnd = COMMENT.matcher(cmnd).replaceFirst("").trim().toLowerCase();
 
         if (cmnd.isEmpty()) {
             return;
         }
         for (Command parser : _commands) {
-            parser._matcher.reset(cmnd);
-            if (parser._matcher.matches()) {
-                parser._processor.accept(parser._matcher);
+            Matcher mat = parser._pattern.matcher(cmnd);
+            if (mat.matches()) {
+                parser._processor.accept(mat);
                 return;
             }
         }
@@ -207,17 +460,21 @@ final class Controller {
 
     /** Command "new". */
     private void doNew(Matcher unused) {
+        stopPlayers();
         _board.init();
         _winner = null;
+        _gameStats = new SearchStats();
     }
 
     /** Command "manual <color>", where <color> is COLOR.group(1). */
     private void doManual(Matcher color) {
         switch (color.group(1)) {
         case "black":
+            _black.stop();
             _black = _manualPlayerTemplate.create(BLACK, this);
             break;
         case "white":
+            _white.stop();
             _white = _manualPlayerTemplate.create(WHITE, this);
             break;
         default:
@@ -230,9 +487,11 @@ final class Controller {
     private void doAuto(Matcher color) {
         switch (color.group(1)) {
         case "black":
+            _black.stop();
             _black = _autoPlayerTemplate.create(BLACK, this);
             break;
         case "white":
+            _white.stop();
             _white = _autoPlayerTemplate.create(WHITE, this);
             break;
         default:
@@ -281,12 +540,50 @@ final class Controller {
         }
     }
 
+    /** Command "time MS" where MS is the first captured group of MAT. */
+    private void doTime(Matcher mat) {
+        try {
+            setMoveTime(Long.parseLong(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "threads N" where N is the first captured group of MAT. */
+    private void doThreads(Matcher mat) {
+        try {
+            setThreads(Integer.parseInt(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "perft N [divide]": count the positions N moves from the
+     *  current one, where N is the first captured group of MAT, and print
+     *  the count and speed, broken down by first move iff the second
+     *  group matched. */
+    private void doPerft(Matcher mat) {
+        int depth;
+        try {
+            depth = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (_shared && depth > MAX_SHARED_PERFT_DEPTH) {
+            throw error("perft depth is at most %d in shared sessions",
+                        MAX_SHARED_PERFT_DEPTH);
+        }
+        _output.print(new Perft(_board).report(depth,
+                                                  mat.group(2) != null));
+    }
+
     /** Execute a move command matched in MAT. */
     private void doMove(Matcher mat) {
         _board.makeMove(Move.mv(mat.group(0)));
         if (_winner == null) {
             _winner = _board.winner();
             if (_winner != null) {
+                stopPlayers();
                 _view.update(this);
                 _reporter.reportNote("%s wins.", _winner.toName());
             }
@@ -295,7 +592,47 @@ final class Controller {
 
     /** Dump the contents of the board on standard output. */
     private void doDump(Matcher unused) {
-        System.out.printf("===%n%s===%n", _board);
+        _output.printf("===%n%s===%n", _board);
+    }
+
+    /** Command "stats [on|off]": with an argument, turns the report of
+     *  each automated move's search statistics on or off according to
+     *  MAT.group(1); without, reports the last automated move's
+     *  statistics and the totals since the last "new". */
+    private void doStats(Matcher mat) {
+        if (mat.group(1) != null) {
+            _statsNotes = mat.group(1).equals("on");
+        } else if (_lastStats == null) {
+            reportNote("No moves searched.");
+        } else {
+            reportNote("Last %s", _lastStats);
+            reportNote("Total %s", _gameStats);
+        }
+    }
+
+    /** Command "lmr on|off", according to MAT.group(1). */
+    private void doLateMoveReductions(Matcher mat) {
+        setLateMoveReductions(mat.group(1).equals("on"));
+    }
+
+    /** Command "nullmove on|off", according to MAT.group(1). */
+    private void doNullMove(Matcher mat) {
+        setNullMove(mat.group(1).equals("on"));
+    }
+
+    /** Command "deadline N", where N is MAT.group(1), a number of
+     *  milliseconds (0 for none). */
+    private void doDeadline(Matcher mat) {
+        try {
+            setSearchDeadline(Long.parseLong(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "ponder on|off", according to MAT.group(1). */
+    private void doPonder(Matcher mat) {
+        setPonder(mat.group(1).equals("on"));
     }
 
     /** Undo back to before my last move, if there was one (otherwise does
@@ -321,6 +658,67 @@ final class Controller {
     /** The object that is displaying the current game. */
     private View _view;
 
+    /** Default size in megabytes of each AI's transposition table. */
+    static final int DEFAULT_TABLE_SIZE = 16;
+
+    /** Size in megabytes of each AI's transposition table. */
+    private int _tableSize = DEFAULT_TABLE_SIZE;
+
+    /** Milliseconds each AI may spend per move, or 0 for fixed depth. */
+    private long _moveTime;
+
+    /** Evaluation function used by each AI. */
+    private Evaluator _evaluator = new FeatureEvaluator();
+
+    /** Opening book used by each AI, or null. */
+    private OpeningBook _openingBook;
+
+    /** Endgame tablebase used by each AI, or null. */
+    private Tablebase _tablebase;
+
+    /** Pool on which each AI searches, or null. */
+    private ExecutorService _searchPool;
+
+    /** True iff each AI uses late-move reductions. */
+    private boolean _lateMoveReductions;
+
+    /** True iff each AI uses null-move pruning. */
+    private boolean _nullMove;
+
+    /** True iff each AI ponders against manual opponents. */
+    private boolean _ponder;
+
+    /** True iff I am one of many sessions sharing one program. */
+    private boolean _shared;
+
+    /** Milliseconds after which each AI must move, or 0 for no limit. */
+    private long _searchDeadline;
+
+    /** Statistics of the last automated move, or null. */
+    private SearchStats _lastStats;
+
+    /** Totals of the statistics of automated moves since the last
+     *  "new". */
+    private SearchStats _gameStats = new SearchStats();
+
+    /** True iff the statistics of each automated move are reported. */
+    private boolean _statsNotes;
+
+    /** Where statistics of each automated move are written, or null. */
+    private PrintStream _statsLog;
+
+    /** True iff _statsLog gets JSON lines rather than CSV. */
+    private boolean _statsJson;
+
+    /** Largest number of search threads per automated player. */
+    static final int MAX_THREADS = 256;
+
+    /** Deepest perft allowed in a shared session. */
+    static final int MAX_SHARED_PERFT_DEPTH = 3;
+
+    /** Number of threads each AI searches with. */
+    private int _threads = 1;
+
     /** My pseudo-random number generator. */
     private Random _randGen = new Random();
 
@@ -330,6 +728,10 @@ final class Controller {
     /** Input source. */
     private Scanner _input;
 
+    /** Destination of prompts and other output not sent to the
+     *  reporter. */
+    private final PrintStream _output;
+
     /** The current White and Black players, each created from
      *  _autoPlayerTemplate or _manualPlayerTemplate. */
     private Player _white, _black;
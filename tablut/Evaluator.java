@@ -0,0 +1,15 @@
+package tablut;
+
+/** A static evaluation function used by an AI to score the leaves of its
+ *  search.  Implementations must not change the boards they are given
+ *  and must be safe to call from several search threads at once.
+ *  @author Citlalli Villarreal
+ */
+interface Evaluator {
+
+    /** Return a heuristic value for BOARD, which has no winner yet.  Larger
+     *  values are better for White.  Values should be small (well within
+     *  a million either way) so that they never look like won games. */
+    int score(Board board);
+
+}
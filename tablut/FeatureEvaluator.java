@@ -0,0 +1,141 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+import static tablut.Utils.error;
+
+/** An Evaluator that scores a board as a weighted sum of features, each
+ *  measured from White's point of view:
+ *  <ul>
+ *  <li> material: White's pieces (king included) less Black's;
+ *  <li> kingEdge: KING_EDGE_BONUS less the king's distance to the nearest
+ *       edge (0 if the king is gone or already on the edge);
+ *  <li> mobility: White's legal moves less Black's;
+ *  <li> escapeRoutes: directions in which the king has a clear run to the
+ *       edge;
+ *  <li> kingAttackers: black pieces next to the king, counted negatively;
+ *  <li> throneDistance: steps (along rows and columns) from the king to
+ *       the throne.
+ *  </ul>
+ *  The default weights use only material and kingEdge.  Features whose
+ *  weight is 0 are not computed, so mobility, the only one that is not
+ *  constant time, costs nothing unless it is used.
+ *
+ *  <p>Weights can be read from a text file of lines of the form
+ *  <pre>
+ *      FEATURE WEIGHT
+ *  </pre>
+ *  where FEATURE is one of the feature names above and WEIGHT an integer.
+ *  Blank lines and text from "#" to the end of a line are ignored, and
+ *  features not mentioned keep their default weights.
+ *  @author Citlalli Villarreal
+ */
+final class FeatureEvaluator implements Evaluator {
+
+    /** Feature names, in the order of their weights. */
+    static final String[] FEATURES = {
+        "material", "kingEdge", "mobility", "escapeRoutes", "kingAttackers",
+        "throneDistance"
+    };
+
+    /** Indices of the features in FEATURES. */
+    static final int MATERIAL = 0, KING_EDGE = 1, MOBILITY = 2,
+        ESCAPE_ROUTES = 3, KING_ATTACKERS = 4, THRONE_DISTANCE = 5;
+
+    /** Value of the kingEdge feature for a king one step from the edge,
+     *  plus one. */
+    static final int KING_EDGE_BONUS = 50;
+
+    /** An evaluator with the default weights. */
+    FeatureEvaluator() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    /** An evaluator whose weights are WEIGHTS, indexed as FEATURES. */
+    FeatureEvaluator(int[] weights) {
+        if (weights.length != FEATURES.length) {
+            throw error("need %d weights", FEATURES.length);
+        }
+        _weights = weights.clone();
+    }
+
+    /** Return an evaluator with the weights in the file named FILENAME,
+     *  in the format described above. */
+    static FeatureEvaluator load(String fileName) {
+        try (Reader input = new FileReader(fileName)) {
+            return read(input);
+        } catch (IOException excp) {
+            throw error("could not read weights file %s", fileName);
+        }
+    }
+
+    /** Return an evaluator with the weights read from INPUT, in the format
+     *  described above. */
+    static FeatureEvaluator read(Reader input) throws IOException {
+        int[] weights = DEFAULT_WEIGHTS.clone();
+        BufferedReader lines = new BufferedReader(input);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            int feature = Arrays.asList(FEATURES).indexOf(fields[0]);
+            if (fields.length != 2 || feature < 0) {
+                throw error("bad weight line: %s", line);
+            }
+            try {
+                weights[feature] = Integer.parseInt(fields[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad weight: %s", fields[1]);
+            }
+        }
+        return new FeatureEvaluator(weights);
+    }
+
+    /** Return the weight of feature number FEATURE. */
+    int weight(int feature) {
+        return _weights[feature];
+    }
+
+    @Override
+    public int score(Board board) {
+        int[] w = _weights;
+        int score = w[MATERIAL]
+            * (board.pieceCount(WHITE) - board.pieceCount(BLACK));
+        Square king = board.kingPosition();
+        if (king == null) {
+            return score;
+        }
+        int edge = board.kingEdgeDistance();
+        if (edge > 0) {
+            score += w[KING_EDGE] * (KING_EDGE_BONUS - edge);
+        }
+        if (w[MOBILITY] != 0) {
+            score += w[MOBILITY]
+                * (board.mobility(WHITE) - board.mobility(BLACK));
+        }
+        score += w[ESCAPE_ROUTES] * board.kingEscapeRoutes();
+        score -= w[KING_ATTACKERS] * board.kingAttackers();
+        score += w[THRONE_DISTANCE]
+            * (Math.abs(king.col() - Board.THRONE.col())
+               + Math.abs(king.row() - Board.THRONE.row()));
+        return score;
+    }
+
+    /** Weights used when no others are given. */
+    private static final int[] DEFAULT_WEIGHTS = { 1, 1, 0, 0, 0, 0 };
+
+    /** My weights, indexed as FEATURES. */
+    private final int[] _weights;
+}
@@ -49,6 +49,10 @@ class GUI extends TopLevel implements View, Reporter {
     /** Response to "Quit" button click. */
     private void quit(String dummy) {
         _pendingCommands.offer("quit");
+        Controller controller = _controller;
+        if (controller != null) {
+            controller.abortSearch();
+        }
     }
 
     /** Return the next command from our widget, waiting for it as necessary.
@@ -68,6 +72,7 @@ class GUI extends TopLevel implements View, Reporter {
 
     @Override
     public void update(Controller controller) {
+        _controller = controller;
         Board board = controller.board();
 
         _widget.update(board);
@@ -138,6 +143,9 @@ class GUI extends TopLevel implements View, Reporter {
     /** The board widget. */
     private BoardWidget _widget;
 
+    /** The controller I last displayed, whose search Quit cuts short. */
+    private volatile Controller _controller;
+
     /** Queue of pending commands resulting from menu clicks and moves on the
      *  board.  We use a blocking queue because the responses to clicks
      *  on the board and on menus happen in parallel to the methods that
@@ -19,11 +19,21 @@ public class Main {
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1}"
+                            + " --hash=(\\d+){0,1} --time=(\\d+){0,1}"
+                            + " --deadline=(\\d+){0,1}"
+                            + " --weights={0,1} --book={0,1}"
+                            + " --tablebase={0,1} --stats={0,1}"
+                            + " --={0,2}",
                             args);
         if (!options.ok()) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--strict] [--hash=MB]"
+                               + " [--time=MS] [--deadline=MS]"
+                               + " [--weights=FILE]"
+                               + " [--book=FILE] [--tablebase=DIR]"
+                               + " [--stats=FILE]"
+                               + " [INPUT [OUTPUT]]");
             System.exit(1);
         }
 
@@ -96,7 +106,59 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+        Controller control =
+            new Controller(view, log, reporter, manualPlayer,
+                           new AI(), options.contains("--strict"));
+        if (options.contains("--hash")) {
+            try {
+                control.setTableSize(
+                    Integer.parseInt(options.getFirst("--hash")));
+            } catch (IllegalArgumentException excp) {
+                Utils.fatal("Bad --hash: %s%n", excp.getMessage());
+            }
+        }
+        if (options.contains("--time")) {
+            try {
+                control.setMoveTime(
+                    Long.parseLong(options.getFirst("--time")));
+            } catch (IllegalArgumentException excp) {
+                Utils.fatal("Bad --time: %s%n", excp.getMessage());
+            }
+        }
+        if (options.contains("--deadline")) {
+            try {
+                control.setSearchDeadline(
+                    Long.parseLong(options.getFirst("--deadline")));
+            } catch (IllegalArgumentException excp) {
+                Utils.fatal("Bad --deadline: %s%n", excp.getMessage());
+            }
+        }
+        if (options.contains("--weights")) {
+            try {
+                control.setEvaluator(
+                    FeatureEvaluator.load(options.getFirst("--weights")));
+            } catch (IllegalArgumentException excp) {
+                Utils.fatal("Bad --weights: %s%n", excp.getMessage());
+            }
+        }
+        if (options.contains("--book")) {
+            control.setOpeningBook(
+                OpeningBook.open(options.getFirst("--book")));
+        }
+        if (options.contains("--tablebase")) {
+            control.setTablebase(
+                new Tablebase(options.getFirst("--tablebase"),
+                              Tablebase.DEFAULT_MEMORY));
+        }
+        if (options.contains("--stats")) {
+            String name = options.getFirst("--stats");
+            try {
+                control.setStatsLog(new PrintStream(name),
+                                    !name.endsWith(".csv"));
+            } catch (IOException excp) {
+                throw error("Could not open statistics file");
+            }
+        }
+        return control;
     }
 }
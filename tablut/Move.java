@@ -14,7 +14,9 @@ import static tablut.Utils.*;
 /** A move in the game of Tablut. As for Squares, Moves are immutable
  *  and unique: there is only one move object for each possible move
  *  (generated by the factory method  mv, the constructor being private).
- *  As for Squares, you can freely use == to compare Moves.
+ *  As for Squares, you can freely use == to compare Moves.  All Moves are
+ *  created when the class is loaded and nothing here changes afterwards,
+ *  so Moves may be used freely by any number of threads.
  *  @author Citlalli Villarreal
  */
 final class Move {
@@ -38,37 +40,58 @@ final class Move {
     /** Return the unique Move FROM-TO, or null if this is not a valid
      *  move. */
     static Move mv(Square from, Square to) {
-        if ((from.row() != to.row() && from.col() != to.col()) || from == to) {
-            return null;
-        }
-
-        if (MOVES[from.index()][to.index()] == null) {
-            MOVES[from.index()][to.index()] = new Move(from, to);
-        }
         return MOVES[from.index()][to.index()];
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            Square from = sq(_moveMatcher.group(1));
+        Matcher mat = MOVE_PATTERN.matcher(str);
+        if (mat.matches()) {
+            Square from = sq(mat.group(1));
             Square to;
-            if (_moveMatcher.group(5) == null) {
-                to = sq(_moveMatcher.group(4), _moveMatcher.group(3));
+            if (mat.group(5) == null) {
+                to = sq(mat.group(4), mat.group(3));
             } else {
-                to = sq(_moveMatcher.group(2), _moveMatcher.group(5));
+                to = sq(mat.group(2), mat.group(5));
             }
             return mv(from, to);
         }
         return null;
     }
 
+    /** Return the packed int form of the move from the square with index
+     *  FROM to the square with index TO.  Packed moves are used where moves
+     *  are stored in bulk, as in move generation buffers. */
+    static int pack(int from, int to) {
+        return (from << PACKED_FROM_SHIFT) | to;
+    }
+
+    /** Return the index of the square moved from in the packed move
+     *  PACKED. */
+    static int packedFrom(int packed) {
+        return packed >>> PACKED_FROM_SHIFT;
+    }
+
+    /** Return the index of the square moved to in the packed move
+     *  PACKED. */
+    static int packedTo(int packed) {
+        return packed & PACKED_SQUARE_MASK;
+    }
+
+    /** Return the unique Move whose packed form is PACKED. */
+    static Move unpack(int packed) {
+        return mv(sq(packedFrom(packed)), sq(packedTo(packed)));
+    }
+
+    /** Return my packed form (see pack). */
+    int packed() {
+        return pack(_from.index(), _to.index());
+    }
+
     /** Return true iff STR has the right format for a Move. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return MOVE_PATTERN.matcher(str).matches();
     }
 
     @Override
@@ -109,7 +132,13 @@ final class Move {
         return (_from.index() << 6) + _to.index();
     }
 
-    /** The cache of all Moves created. */
+    /** Bit position of the from-square index in a packed move. */
+    private static final int PACKED_FROM_SHIFT = 7;
+    /** Mask for the to-square index in a packed move. */
+    private static final int PACKED_SQUARE_MASK = (1 << PACKED_FROM_SHIFT) - 1;
+
+    /** MOVES[i][j] is the Move from the square with index i to the one
+     *  with index j, or null if there is no such move. */
     private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
 
     /** ROOK_MOVES[i][d] is a list of all rook moves in direction
@@ -125,7 +154,8 @@ final class Move {
                 ROOK_MOVES[i0][d] = new MoveList();
                 MoveList L = ROOK_MOVES[i0][d];
                 for (Square sq1 : ROOK_SQUARES[i0][d]) {
-                    L.add(mv(sq0, sq1));
+                    MOVES[i0][sq1.index()] = new Move(sq0, sq1);
+                    L.add(MOVES[i0][sq1.index()]);
                 }
             }
         }
@@ -134,7 +164,5 @@ final class Move {
     /** The components of this Move. */
     private final Square _from, _to;
     /** The printed form of this Move. */
-    private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
+    private final String _str;
 }
@@ -0,0 +1,144 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Board.MAX_MOVES;
+
+/** Orders the moves at each node of an AI's search so that the ones most
+ *  likely to cause a cutoff come first: the transposition-table move, then
+ *  tactical moves (captures and king escapes, see Board.isTactical), then
+ *  the two killer moves of the node's ply (quiet moves that recently
+ *  caused cutoffs at that ply), then the remaining moves by their history
+ *  score, which grows each time a move from the same square to the same
+ *  square causes a cutoff.  Also counts cutoffs, and how many of them
+ *  came from the first move tried, as a measure of ordering quality.
+ *  Each AI has its own orderer, so none of this is shared between
+ *  threads.
+ *  @author Citlalli Villarreal
+ */
+final class MoveOrderer {
+
+    /** Number of killer moves kept per ply. */
+    static final int KILLERS = 2;
+
+    /** An orderer for searches of at most MAXPLY plies. */
+    MoveOrderer(int maxPly) {
+        _killers = new int[maxPly + 1][KILLERS];
+        _keys = new int[maxPly + 1][MAX_MOVES];
+    }
+
+    /** Forget all killers, history and counts. */
+    void clear() {
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, 0);
+        }
+        Arrays.fill(_history, 0);
+        _cutoffs = _firstMoveCutoffs = 0;
+    }
+
+    /** Prepare for a new search: forget the killers and counts, and halve
+     *  the history scores so that older results count for less. */
+    void newSearch() {
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, 0);
+        }
+        for (int i = 0; i < _history.length; i += 1) {
+            _history[i] >>= 1;
+        }
+        _cutoffs = _firstMoveCutoffs = 0;
+    }
+
+    /** Sort the first N packed moves in MOVES, which are legal in BOARD at
+     *  ply PLY, best first.  HASHMOVE (0 if none) goes first if present.
+     *  The sort is stable, so equally ranked moves keep their generation
+     *  order. */
+    void order(Board board, int[] moves, int n, int hashMove, int ply) {
+        int[] keys = _keys[ply];
+        int[] killers = _killers[ply];
+        for (int k = 0; k < n; k += 1) {
+            int move = moves[k];
+            int key;
+            if (move == hashMove) {
+                key = HASH_KEY;
+            } else if (board.isTactical(move)) {
+                key = TACTICAL_KEY;
+            } else if (move == killers[0]) {
+                key = KILLER_KEY;
+            } else if (move == killers[1]) {
+                key = KILLER_KEY - 1;
+            } else {
+                key = _history[move & HISTORY_MASK];
+            }
+            int j = k;
+            for (; j > 0 && keys[j - 1] < key; j -= 1) {
+                keys[j] = keys[j - 1];
+                moves[j] = moves[j - 1];
+            }
+            keys[j] = key;
+            moves[j] = move;
+        }
+    }
+
+    /** Record that the packed move MOVE, legal in BOARD at ply PLY with
+     *  DEPTH levels left to search, caused a cutoff, and that it was
+     *  move number INDEX (from 0) tried there. */
+    void cutoff(Board board, int move, int ply, int depth, int index) {
+        _cutoffs += 1;
+        if (index == 0) {
+            _firstMoveCutoffs += 1;
+        }
+        if (board.isTactical(move)) {
+            return;
+        }
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        int h = move & HISTORY_MASK;
+        _history[h] += depth * depth;
+        if (_history[h] >= HISTORY_LIMIT) {
+            for (int i = 0; i < _history.length; i += 1) {
+                _history[i] >>= 1;
+            }
+        }
+    }
+
+    /** Return the number of cutoffs recorded since the last newSearch. */
+    long cutoffs() {
+        return _cutoffs;
+    }
+
+    /** Return how many of my cutoffs came from the first move tried. */
+    long firstMoveCutoffs() {
+        return _firstMoveCutoffs;
+    }
+
+    /** Return the fraction of my cutoffs that came from the first move
+     *  tried (0 if there were none). */
+    double firstMoveCutoffRate() {
+        return _cutoffs == 0 ? 0.0 : (double) _firstMoveCutoffs / _cutoffs;
+    }
+
+    /** Sort keys of the transposition-table move, tactical moves and the
+     *  first killer.  History scores stay below HISTORY_LIMIT, which is
+     *  below all of these. */
+    private static final int
+        HASH_KEY = Integer.MAX_VALUE,
+        TACTICAL_KEY = HASH_KEY - 1,
+        KILLER_KEY = TACTICAL_KEY - 1,
+        HISTORY_LIMIT = 1 << 24;
+
+    /** A packed move is (from << 7) | to, so masking it this way gives a
+     *  distinct history index for every from/to pair. */
+    private static final int HISTORY_MASK = (1 << 14) - 1;
+
+    /** _killers[p] holds the killer moves of ply p, most recent first. */
+    private final int[][] _killers;
+    /** History scores, indexed by packed move. */
+    private final int[] _history = new int[HISTORY_MASK + 1];
+    /** Scratch sort keys for the moves at each ply. */
+    private final int[][] _keys;
+    /** Numbers of cutoffs, and of cutoffs by the first move tried. */
+    private long _cutoffs, _firstMoveCutoffs;
+}
@@ -0,0 +1,169 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static tablut.Utils.error;
+
+/** A book of opening moves, keyed by position (see Board.hashKey).  A
+ *  book is a file holding a header followed by fixed-size entries sorted
+ *  by key:
+ *  <pre>
+ *      int MAGIC, int VERSION, int number of entries,
+ *      then per entry: long key, int move (packed), int weight
+ *  </pre>
+ *  all big-endian.  A key may have several entries; the one with the
+ *  largest weight is the book move.  The file is memory-mapped read-only
+ *  when opened and probed by binary search, so opening it costs almost
+ *  nothing, probes read only a few pages, and one book may be shared by
+ *  any number of search threads.
+ *
+ *  <p>Books are made from self-play by BookMaker.
+ *  @author Citlalli Villarreal
+ */
+final class OpeningBook {
+
+    /** First word of every book file ("TBOK"). */
+    static final int MAGIC = 0x54424f4b;
+    /** Version of the file format. */
+    static final int VERSION = 1;
+    /** Size in bytes of the header and of each entry. */
+    static final int HEADER_BYTES = 12, ENTRY_BYTES = 16;
+
+    /** The book in the file named FILENAME. */
+    static OpeningBook open(String fileName) {
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            MappedByteBuffer data =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ByteOrder.BIG_ENDIAN);
+            if (channel.size() < HEADER_BYTES || data.getInt(0) != MAGIC
+                || data.getInt(Integer.BYTES) != VERSION) {
+                throw error("%s is not an opening book", fileName);
+            }
+            int size = data.getInt(2 * Integer.BYTES);
+            if (channel.size() != HEADER_BYTES + (long) size * ENTRY_BYTES) {
+                throw error("opening book %s is truncated", fileName);
+            }
+            return new OpeningBook(data, size);
+        } catch (IOException excp) {
+            throw error("could not read opening book %s", fileName);
+        }
+    }
+
+    /** A book whose SIZE entries are in DATA. */
+    private OpeningBook(MappedByteBuffer data, int size) {
+        _data = data;
+        _size = size;
+    }
+
+    /** Return the number of entries in the book. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the book move (packed, see Move.pack) for the position with
+     *  key KEY, or 0 if the book has none. */
+    int probe(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int best = 0, bestWeight = -1;
+        for (int i = lo; i < _size && key(i) == key; i += 1) {
+            int weight = _data.getInt(offset(i) + Long.BYTES + Integer.BYTES);
+            if (weight > bestWeight) {
+                best = _data.getInt(offset(i) + Long.BYTES);
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+    /** Return the book move for BOARD if it is legal there, else null. */
+    Move bookMove(Board board) {
+        int move = probe(board.hashKey());
+        if (move == 0) {
+            return null;
+        }
+        Move result = Move.unpack(move);
+        return board.isLegal(result) ? result : null;
+    }
+
+    /** Return the key of entry I. */
+    private long key(int i) {
+        return _data.getLong(offset(i));
+    }
+
+    /** Return the byte offset of entry I. */
+    private static int offset(int i) {
+        return HEADER_BYTES + i * ENTRY_BYTES;
+    }
+
+    /** Collects weighted moves and writes them out as a book. */
+    static class Builder {
+
+        /** Add WEIGHT to the weight of packed move MOVE in the position
+         *  with key KEY. */
+        void add(long key, int move, int weight) {
+            Map<Integer, Integer> moves =
+                _entries.computeIfAbsent(key, k -> new HashMap<>());
+            moves.merge(move, weight, Integer::sum);
+        }
+
+        /** Write the entries with positive weight to the file named
+         *  FILENAME, and return how many there were. */
+        int write(String fileName) throws IOException {
+            Long[] keys = _entries.keySet().toArray(new Long[0]);
+            Arrays.sort(keys);
+            int count = 0;
+            for (Long key : keys) {
+                for (int weight : _entries.get(key).values()) {
+                    count += weight > 0 ? 1 : 0;
+                }
+            }
+            FileOutputStream file = new FileOutputStream(fileName);
+            try (DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                for (Long key : keys) {
+                    for (Map.Entry<Integer, Integer> e
+                             : _entries.get(key).entrySet()) {
+                        if (e.getValue() > 0) {
+                            out.writeLong(key);
+                            out.writeInt(e.getKey());
+                            out.writeInt(e.getValue());
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        /** Moves and their weights, by position key. */
+        private final Map<Long, Map<Integer, Integer>> _entries =
+            new HashMap<>();
+    }
+
+    /** The mapped file. */
+    private final MappedByteBuffer _data;
+    /** Number of entries. */
+    private final int _size;
+}
@@ -0,0 +1,192 @@
+package tablut;
+
+import java.util.Formatter;
+
+import static tablut.Board.MAX_MOVES;
+import static tablut.Utils.error;
+
+/** Performance test ("perft") of move generation: counts the positions
+ *  reached by all sequences of legal moves of a given length, by
+ *  generating, making and undoing every move along the way.  Positions
+ *  in which the game is over are not expanded.  Counts for known
+ *  positions (see REFERENCE) check that changes to Board keep move
+ *  generation, captures and undo correct; the time taken measures how
+ *  fast they are.
+ *
+ *  <p>Also a standalone program:
+ *  <pre>
+ *      java tablut.Perft DEPTH [divide] [MOVE...]
+ *      java tablut.Perft check
+ *  </pre>
+ *  The first form counts to DEPTH from the position reached from the
+ *  initial one by the given MOVEs, optionally broken down by first move.
+ *  The second checks all the reference counts.
+ *  @author Citlalli Villarreal
+ */
+final class Perft {
+
+    /** Reference positions, each given by the moves leading to it from
+     *  the initial position, and the number of positions reached from it
+     *  in 1, 2, 3 ... moves.  The positions other than the first come
+     *  from the test scripts in the testing directory. */
+    static final Object[][] REFERENCE = {
+        { "", new long[] { 80, 4400, 353200 } },
+        /* 06-captures */
+        { "h5-4 f5-2 f9-5 e7-c a6-d d5-2 d6-5 e4-g a4-e c7-b e8-7",
+          new long[] { 37, 2983, 114546 } },
+        /* 07-captures */
+        { "i6-f f5-2 h5-3 e7-f h3-f e5-f f3-g g5-6 f1-h f5-h",
+          new long[] { 78, 4960, 391232 } },
+        /* 00-occupiedthrone */
+        { "h5-6 g5-6 i5-h f5-6 h5-f g6-5",
+          new long[] { 80, 4563, 353462 } },
+        /* 00-blackwins */
+        { "h5-9 f5-8 h9-8 e6-b h8-g d5-2",
+          new long[] { 76, 4514, 351912 } },
+    };
+
+    /** A perft of the current position of BOARD, which is not changed. */
+    Perft(Board board) {
+        _board = new Board(board);
+    }
+
+    /** Return the number of positions reached from mine by sequences of
+     *  DEPTH legal moves. */
+    long count(int depth) {
+        ensureBuffers(depth);
+        return count(depth, 0);
+    }
+
+    /** Return a report of the positions reached from mine by sequences of
+     *  DEPTH legal moves: their number, the time taken and the number
+     *  counted per second, preceded, iff DIVIDE, by the number reached
+     *  after each first move. */
+    String report(int depth, boolean divide) {
+        ensureBuffers(depth);
+        Formatter out = new Formatter();
+        long start = System.nanoTime();
+        long total;
+        if (divide && depth > 0 && _board.winner() == null) {
+            total = 0;
+            int[] moves = _moves[0];
+            int n = _board.legalMoves(_board.turn(), moves);
+            for (int k = 0; k < n; k += 1) {
+                _board.makeMove(moves[k]);
+                long nodes = count(depth - 1, 1);
+                _board.undo();
+                out.format("%s: %d%n", Move.unpack(moves[k]), nodes);
+                total += nodes;
+            }
+        } else {
+            total = count(depth, 0);
+        }
+        long nanos = Math.max(1, System.nanoTime() - start);
+        out.format("Nodes: %d  Time: %.3f s  Nodes/sec: %.0f%n", total,
+                   nanos / NANOS_PER_SECOND,
+                   total * NANOS_PER_SECOND / nanos);
+        return out.toString();
+    }
+
+    /** Return the number of positions reached from the current position of
+     *  _board by sequences of DEPTH legal moves, using move buffer
+     *  _moves[PLY]. */
+    private long count(int depth, int ply) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (_board.winner() != null) {
+            return 0;
+        }
+        int[] moves = _moves[ply];
+        int n = _board.legalMoves(_board.turn(), moves);
+        if (depth == 1) {
+            return n;
+        }
+        long total = 0;
+        for (int k = 0; k < n; k += 1) {
+            _board.makeMove(moves[k]);
+            total += count(depth - 1, ply + 1);
+            _board.undo();
+        }
+        return total;
+    }
+
+    /** Make sure there are move buffers for a count to DEPTH. */
+    private void ensureBuffers(int depth) {
+        if (_moves.length < depth + 1) {
+            _moves = new int[depth + 1][MAX_MOVES];
+        }
+    }
+
+    /** Return the board reached from the initial position by the
+     *  whitespace-separated moves in MOVES. */
+    static Board position(String moves) {
+        Board board = new Board();
+        for (String mv : moves.trim().split("\\s+")) {
+            if (mv.isEmpty()) {
+                continue;
+            }
+            Move move = Move.mv(mv);
+            if (move == null || !board.isLegal(move)) {
+                throw error("illegal move: %s", mv);
+            }
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+    /** Check every count in REFERENCE, returning a description of the
+     *  first mismatch, or null if there is none. */
+    static String check() {
+        for (Object[] ref : REFERENCE) {
+            String moves = (String) ref[0];
+            long[] expected = (long[]) ref[1];
+            Perft perft = new Perft(position(moves));
+            for (int d = 1; d <= expected.length; d += 1) {
+                long nodes = perft.count(d);
+                if (nodes != expected[d - 1]) {
+                    return String.format("after \"%s\", depth %d: expected"
+                                         + " %d, got %d", moves, d,
+                                         expected[d - 1], nodes);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Run perft as described in the class comment, according to ARGS. */
+    public static void main(String... args) {
+        if (args.length == 1 && args[0].equals("check")) {
+            String mismatch = check();
+            if (mismatch != null) {
+                Utils.fatal("Perft mismatch %s%n", mismatch);
+            }
+            System.out.println("All perft reference counts match.");
+            return;
+        }
+        if (args.length == 0 || !args[0].matches("\\d+")) {
+            Utils.fatal("Usage: java tablut.Perft DEPTH [divide] [MOVE...]%n"
+                        + "       java tablut.Perft check%n");
+        }
+        int depth = Integer.parseInt(args[0]);
+        boolean divide = args.length > 1 && args[1].equals("divide");
+        StringBuilder moves = new StringBuilder();
+        for (int i = divide ? 2 : 1; i < args.length; i += 1) {
+            moves.append(args[i]).append(' ');
+        }
+        try {
+            Perft perft = new Perft(position(moves.toString()));
+            System.out.print(perft.report(depth, divide));
+        } catch (IllegalArgumentException excp) {
+            Utils.fatal("%s%n", excp.getMessage());
+        }
+    }
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** The board on which moves are made and undone. */
+    private final Board _board;
+    /** Move buffers: _moves[p] holds the moves at ply p. */
+    private int[][] _moves = new int[0][];
+}
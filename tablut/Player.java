@@ -39,6 +39,18 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Stop any work I am doing in the background, such as thinking on
+     *  my opponent's time, because I am being replaced or the game is
+     *  over.  Does nothing by default. */
+    void stop() {
+    }
+
+    /** Stop working out my current move as soon as possible, settling for
+     *  the best found so far.  May be called from any thread.  Does
+     *  nothing by default. */
+    void cancelMove() {
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
@@ -0,0 +1,139 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A multiset of 64-bit position keys, used by Board to detect repeated
+ *  positions.  Keys live in an open-addressed (linear probing) table of
+ *  primitive longs, so adding, removing and looking up a key take
+ *  expected constant time and allocate nothing once the table has grown
+ *  to fit the game.
+ *  @author Citlalli Villarreal
+ */
+final class PositionHistory {
+
+    /** Initial number of slots.  Must be a power of two. */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** An empty history. */
+    PositionHistory() {
+        _keys = new long[INITIAL_CAPACITY];
+        _counts = new int[INITIAL_CAPACITY];
+    }
+
+    /** Remove all keys. */
+    void clear() {
+        Arrays.fill(_counts, 0);
+        _size = 0;
+    }
+
+    /** Make me a copy of MODEL. */
+    void copy(PositionHistory model) {
+        if (model == this) {
+            return;
+        }
+        if (_keys.length != model._keys.length) {
+            _keys = new long[model._keys.length];
+            _counts = new int[model._counts.length];
+        }
+        System.arraycopy(model._keys, 0, _keys, 0, _keys.length);
+        System.arraycopy(model._counts, 0, _counts, 0, _counts.length);
+        _size = model._size;
+    }
+
+    /** Return the number of times KEY has been added and not removed. */
+    int count(long key) {
+        int i = find(key);
+        return _counts[i];
+    }
+
+    /** Return true iff KEY is present at least once. */
+    boolean contains(long key) {
+        return count(key) > 0;
+    }
+
+    /** Add one occurrence of KEY. */
+    void add(long key) {
+        int i = find(key);
+        if (_counts[i] == 0) {
+            if (2 * (_size + 1) > _keys.length) {
+                grow();
+                i = find(key);
+            }
+            _keys[i] = key;
+            _size += 1;
+        }
+        _counts[i] += 1;
+    }
+
+    /** Remove one occurrence of KEY, if there is one. */
+    void remove(long key) {
+        int i = find(key);
+        if (_counts[i] == 0) {
+            return;
+        }
+        _counts[i] -= 1;
+        if (_counts[i] == 0) {
+            _size -= 1;
+            closeGap(i);
+        }
+    }
+
+    /** Return the slot holding KEY, or the empty slot where it would go. */
+    private int find(long key) {
+        int mask = _keys.length - 1;
+        int i = home(key, mask);
+        while (_counts[i] != 0 && _keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /** Return the preferred slot for KEY in a table whose size is
+     *  MASK + 1. */
+    private static int home(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /** Refill the now-empty slot I by shifting back any later entries of
+     *  its probe run that may no longer be reachable. */
+    private void closeGap(int i) {
+        int mask = _keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (_counts[j] == 0) {
+                break;
+            }
+            int h = home(_keys[j], mask);
+            boolean stays = i <= j ? (i < h && h <= j) : (i < h || h <= j);
+            if (!stays) {
+                _keys[i] = _keys[j];
+                _counts[i] = _counts[j];
+                _counts[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    /** Double the table size, rehashing all entries. */
+    private void grow() {
+        long[] oldKeys = _keys;
+        int[] oldCounts = _counts;
+        _keys = new long[2 * oldKeys.length];
+        _counts = new int[2 * oldCounts.length];
+        for (int k = 0; k < oldKeys.length; k += 1) {
+            if (oldCounts[k] != 0) {
+                int i = find(oldKeys[k]);
+                _keys[i] = oldKeys[k];
+                _counts[i] = oldCounts[k];
+            }
+        }
+    }
+
+    /** The keys, valid only in slots whose count is non-zero. */
+    private long[] _keys;
+    /** Number of occurrences of the key in each slot (0 if empty). */
+    private int[] _counts;
+    /** Number of distinct keys present. */
+    private int _size;
+}
@@ -0,0 +1,216 @@
+package tablut;
+
+import java.util.Locale;
+
+/** Measurements of the work an AI did to choose one move, or, when
+ *  accumulated with add, of a run of moves: positions visited, static
+ *  evaluations, beta cutoffs, transposition-table probes and hits, the
+ *  depth reached, the time taken and the principal variation.  Formats
+ *  itself as a line for a person (toString), or as a CSV or JSON line for
+ *  programs.
+ *  @author Citlalli Villarreal
+ */
+final class SearchStats {
+
+    /** Where a move came from. */
+    static final String SEARCH = "search", BOOK = "book",
+        TABLEBASE = "tablebase", PONDER = "ponder", TOTAL = "total";
+
+    /** Column names of the CSV form. */
+    static final String CSV_HEADER =
+        "side,move_number,move,source,depth,nodes,evaluations,cutoffs,"
+        + "first_move_cutoffs,table_probes,table_hits,branching_factor,"
+        + "nanos,pv";
+
+    /** Empty statistics for move number MOVENUMBER (counting from 1), made
+     *  by SIDE. */
+    SearchStats(Piece side, int moveNumber) {
+        _side = side;
+        _moveNumber = moveNumber;
+        _source = SEARCH;
+    }
+
+    /** Empty statistics for a run of moves (see add). */
+    SearchStats() {
+        this(null, 0);
+        _source = TOTAL;
+    }
+
+    /** Add the counts NODES, EVALUATIONS, CUTOFFS, FIRSTMOVECUTOFFS,
+     *  TABLEPROBES and TABLEHITS of one searcher (an AI or one of its
+     *  helpers). */
+    void count(long nodes, long evaluations, long cutoffs,
+               long firstMoveCutoffs, long tableProbes, long tableHits) {
+        _nodes += nodes;
+        _evaluations += evaluations;
+        _cutoffs += cutoffs;
+        _firstMoveCutoffs += firstMoveCutoffs;
+        _tableProbes += tableProbes;
+        _tableHits += tableHits;
+    }
+
+    /** Record that the search chose MOVE from SOURCE (SEARCH, BOOK,
+     *  TABLEBASE or PONDER), having completed DEPTH plies in NANOS
+     *  nanoseconds, with principal variation PV (moves separated by
+     *  blanks). */
+    void finish(Move move, String source, int depth, long nanos,
+                String pv) {
+        _move = move;
+        _pv = pv;
+        _source = source;
+        _depth = depth;
+        _nanos = nanos;
+        _moves = 1;
+    }
+
+    /** Add the counts and time of OTHER to mine, keeping the deepest
+     *  depth reached. */
+    void add(SearchStats other) {
+        count(other._nodes, other._evaluations, other._cutoffs,
+              other._firstMoveCutoffs, other._tableProbes, other._tableHits);
+        _nanos += other._nanos;
+        _depth = Math.max(_depth, other._depth);
+        _moves += other._moves;
+    }
+
+    /** Return the number of moves measured. */
+    int moves() {
+        return _moves;
+    }
+
+    /** Return the number of positions visited, including quiescence
+     *  search. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of static evaluations. */
+    long evaluations() {
+        return _evaluations;
+    }
+
+    /** Return the number of beta cutoffs in the main search. */
+    long cutoffs() {
+        return _cutoffs;
+    }
+
+    /** Return the number of transposition-table hits. */
+    long tableHits() {
+        return _tableHits;
+    }
+
+    /** Return the principal variation of the move measured, as moves
+     *  separated by blanks, or "" if there is none. */
+    String principalVariation() {
+        return _pv;
+    }
+
+    /** Return where the move measured came from (SEARCH, BOOK, TABLEBASE
+     *  or PONDER), or TOTAL for a run of moves. */
+    String source() {
+        return _source;
+    }
+
+    /** Return the deepest iteration completed. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the time taken, in nanoseconds. */
+    long nanos() {
+        return _nanos;
+    }
+
+    /** Return the effective branching factor: the number B such that a
+     *  uniform tree of my depth with branching B would have as many nodes
+     *  as I visited per move.  Returns 0 if nothing was searched. */
+    double branchingFactor() {
+        if (_depth == 0 || _nodes == 0 || _moves == 0) {
+            return 0.0;
+        }
+        return Math.pow((double) _nodes / _moves, 1.0 / _depth);
+    }
+
+    @Override
+    public String toString() {
+        String who = _move == null || _moves != 1
+            ? String.format("%d moves", _moves)
+            : String.format("%s %s (%s)", _side.toName(), _move, _source);
+        return String.format(Locale.ROOT,
+                             "%s: depth %d, %d nodes, %d evaluations,"
+                             + " %d cutoffs (%.0f%% first move),"
+                             + " %d/%d table hits, branching %.2f,"
+                             + " %.1f ms, %.0f nodes/s%s",
+                             who, _depth, _nodes, _evaluations, _cutoffs,
+                             PERCENT * _firstMoveCutoffs
+                             / Math.max(1, _cutoffs),
+                             _tableHits, _tableProbes, branchingFactor(),
+                             _nanos / NANOS_PER_MILLI,
+                             _nodes * NANOS_PER_SECOND / Math.max(1, _nanos),
+                             _pv.isEmpty() ? "" : ", pv " + _pv);
+    }
+
+    /** Return my CSV line (see CSV_HEADER), without line terminator. */
+    String toCsv() {
+        return String.format(Locale.ROOT,
+                             "%s,%d,%s,%s,%d,%d,%d,%d,%d,%d,%d,%.3f,%d,%s",
+                             sideName(), _moveNumber, moveName(), _source,
+                             _depth, _nodes, _evaluations, _cutoffs,
+                             _firstMoveCutoffs, _tableProbes, _tableHits,
+                             branchingFactor(), _nanos, _pv);
+    }
+
+    /** Return my JSON form, on one line. */
+    String toJson() {
+        return String.format(Locale.ROOT,
+                             "{\"side\":\"%s\",\"move_number\":%d,"
+                             + "\"move\":\"%s\",\"source\":\"%s\","
+                             + "\"depth\":%d,\"nodes\":%d,"
+                             + "\"evaluations\":%d,\"cutoffs\":%d,"
+                             + "\"first_move_cutoffs\":%d,"
+                             + "\"table_probes\":%d,\"table_hits\":%d,"
+                             + "\"branching_factor\":%.3f,\"nanos\":%d,"
+                             + "\"pv\":\"%s\"}",
+                             sideName(), _moveNumber, moveName(), _source,
+                             _depth, _nodes, _evaluations, _cutoffs,
+                             _firstMoveCutoffs, _tableProbes, _tableHits,
+                             branchingFactor(), _nanos, _pv);
+    }
+
+    /** Return the name of my side, or "" if I cover a run of moves. */
+    private String sideName() {
+        return _side == null ? "" : _side.toName();
+    }
+
+    /** Return my move, or "" if there is none. */
+    private String moveName() {
+        return _move == null ? "" : _move.toString();
+    }
+
+    /** Percentages. */
+    private static final double PERCENT = 100.0;
+    /** Nanoseconds per second and per millisecond. */
+    private static final double NANOS_PER_SECOND = 1e9,
+        NANOS_PER_MILLI = 1e6;
+
+    /** The side that moved, or null for a run of moves. */
+    private final Piece _side;
+    /** The number of the move, or 0 for a run of moves. */
+    private final int _moveNumber;
+    /** The move chosen, or null. */
+    private Move _move;
+    /** The principal variation. */
+    private String _pv = "";
+    /** Where the move came from. */
+    private String _source;
+    /** Number of moves measured. */
+    private int _moves;
+    /** Deepest iteration completed. */
+    private int _depth;
+    /** Counts of positions, evaluations, cutoffs, first-move cutoffs,
+     *  table probes and table hits. */
+    private long _nodes, _evaluations, _cutoffs, _firstMoveCutoffs,
+        _tableProbes, _tableHits;
+    /** Time taken, in nanoseconds. */
+    private long _nanos;
+}
@@ -0,0 +1,245 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ucb.util.CommandArgs;
+
+/** Plays any number of games at once in one program, for clients that
+ *  connect over a local TCP socket or Unix-domain socket.  Each
+ *  connection is a session speaking the same text commands as the
+ *  standard input of tablut.Main (new, seed, auto, manual, moves, undo,
+ *  limit, dump, quit...) and gets its own Controller and Board.  Sessions
+ *  spend nearly all their time waiting for input, so each runs on a
+ *  virtual thread where the Java runtime has them, and otherwise on a
+ *  thread from a cached pool.  AI searches, which do the real work, all
+ *  run on one fixed pool of platform threads, so however many sessions
+ *  there are, at most that many searches run at once.  To keep it so,
+ *  sessions are shared controllers (see Controller.setShared): their AIs
+ *  search with one thread and do not ponder, and their perft commands are
+ *  kept shallow.  Each AI keeps its own transposition table between
+ *  moves, so memory grows with the number of sessions; tables are
+ *  SESSION_TABLE_SIZE megabytes unless --hash says otherwise.
+ *
+ *  <p>Usage:
+ *  <pre>
+ *      java tablut.Server [--port=N | --socket=PATH] [--workers=N]
+ *          [--hash=MB] [--time=MS] [--deadline=MS] [--weights=FILE]
+ *          [--book=FILE] [--tablebase=DIR]
+ *  </pre>
+ *  where --workers is the size of the search pool and the remaining
+ *  options are as for tablut.Main and apply to every session.  Under
+ *  load, --deadline keeps a slow or long-queued search from holding its
+ *  game hostage: each search is cut off that many milliseconds after the
+ *  session asks for a move, and plays the best move found by then.
+ *  @author Citlalli Villarreal
+ */
+final class Server {
+
+    /** Default TCP port. */
+    static final int DEFAULT_PORT = 9061;
+    /** Default size in megabytes of the transposition table of each
+     *  session's AIs. */
+    static final int SESSION_TABLE_SIZE = 1;
+    /** First line sent on each connection. */
+    static final String GREETING = "Tablut 61B, staff version 1.0";
+
+    /** A server whose sessions start with the AI settings of SETTINGS and
+     *  run their AI searches on a pool of WORKERS threads. */
+    Server(Controller settings, int workers) {
+        _settings = settings;
+        _searchPool = Executors.newFixedThreadPool(workers);
+        _sessions = newSessionExecutor();
+    }
+
+    /** Accept connections on LISTENER, running a session for each, until
+     *  LISTENER is closed. */
+    void serve(ServerSocket listener) {
+        while (!listener.isClosed()) {
+            try {
+                Socket client = listener.accept();
+                _sessions.execute(() -> {
+                    try (client) {
+                        session(client.getInputStream(),
+                                client.getOutputStream());
+                    } catch (IOException excp) {
+                        /* The client went away. */
+                    }
+                });
+            } catch (IOException excp) {
+                /* Stop when the listener is closed. */
+            }
+        }
+    }
+
+    /** Accept connections on LISTENER (a Unix-domain socket), running a
+     *  session for each, until LISTENER is closed. */
+    void serve(ServerSocketChannel listener) {
+        while (listener.isOpen()) {
+            try {
+                SocketChannel client = listener.accept();
+                _sessions.execute(() -> {
+                    try (client) {
+                        session(Channels.newInputStream(client),
+                                Channels.newOutputStream(client));
+                    } catch (IOException excp) {
+                        /* The client went away. */
+                    }
+                });
+            } catch (IOException excp) {
+                /* Stop when the listener is closed. */
+            }
+        }
+    }
+
+    /** Run one session that reads commands from INPUT and writes its
+     *  responses to OUTPUT, returning when it reads "quit" or INPUT
+     *  ends. */
+    void session(InputStream input, OutputStream output) {
+        PrintStream out = new PrintStream(output, true);
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(out, out),
+                           new TextPlayer(), new AI(), false, input, out);
+        controller.copySettings(_settings);
+        controller.setSearchPool(_searchPool);
+        controller.setShared(true);
+        out.println(GREETING);
+        try {
+            controller.play();
+        } catch (IllegalStateException excp) {
+            out.printf("Internal error: %s%n", excp.getMessage());
+        }
+        out.flush();
+    }
+
+    /** Stop accepting new searches and sessions. */
+    void shutdown() {
+        _sessions.shutdown();
+        _searchPool.shutdown();
+    }
+
+    /** Return an executor that runs each task on a new virtual thread,
+     *  if this Java runtime has them, and otherwise on a cached pool of
+     *  platform threads.  Looked up reflectively so that the program
+     *  still compiles and runs on runtimes without virtual threads. */
+    static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Run a server as described in the class comment, according to
+     *  ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--port=(\\d+){0,1} --socket={0,1}"
+                            + " --workers=(\\d+){0,1} --hash=(\\d+){0,1}"
+                            + " --time=(\\d+){0,1} --deadline=(\\d+){0,1}"
+                            + " --weights={0,1}"
+                            + " --book={0,1} --tablebase={0,1}", args);
+        if (!options.ok()
+            || options.contains("--port") && options.contains("--socket")) {
+            Utils.fatal("Usage: java tablut.Server [--port=N | --socket=PATH]"
+                        + " [--workers=N] [--hash=MB] [--time=MS]"
+                        + " [--deadline=MS] [--weights=FILE] [--book=FILE]"
+                        + " [--tablebase=DIR]%n");
+        }
+        Server server;
+        try {
+            server = new Server(settings(options),
+                                intOption(options, "--workers",
+                                          Runtime.getRuntime()
+                                          .availableProcessors()));
+        } catch (IllegalArgumentException excp) {
+            Utils.fatal("%s%n", excp.getMessage());
+            return;
+        }
+        try {
+            if (options.contains("--socket")) {
+                Path path = Paths.get(options.getFirst("--socket"));
+                Files.deleteIfExists(path);
+                ServerSocketChannel listener =
+                    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                listener.bind(UnixDomainSocketAddress.of(path));
+                System.out.printf("Listening on %s%n", path);
+                server.serve(listener);
+            } else {
+                int port = intOption(options, "--port", DEFAULT_PORT);
+                ServerSocket listener =
+                    new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+                System.out.printf("Listening on port %d%n",
+                                  listener.getLocalPort());
+                server.serve(listener);
+            }
+        } catch (IOException excp) {
+            Utils.fatal("Could not listen: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Return a controller holding the AI settings given by OPTIONS. */
+    private static Controller settings(CommandArgs options) {
+        Controller result = Tournament.newController();
+        result.setTableSize(intOption(options, "--hash",
+                                      SESSION_TABLE_SIZE));
+        if (options.contains("--time")) {
+            result.setMoveTime(Long.parseLong(options.getFirst("--time")));
+        }
+        if (options.contains("--deadline")) {
+            result.setSearchDeadline(
+                Long.parseLong(options.getFirst("--deadline")));
+        }
+        if (options.contains("--weights")) {
+            result.setEvaluator(
+                FeatureEvaluator.load(options.getFirst("--weights")));
+        }
+        if (options.contains("--book")) {
+            result.setOpeningBook(
+                OpeningBook.open(options.getFirst("--book")));
+        }
+        if (options.contains("--tablebase")) {
+            result.setTablebase(
+                new Tablebase(options.getFirst("--tablebase"),
+                              Tablebase.DEFAULT_MEMORY));
+        }
+        return result;
+    }
+
+    /** Return the value of integer option NAME in OPTIONS, or DEFLT if it
+     *  is absent. */
+    private static int intOption(CommandArgs options, String name,
+                                 int deflt) {
+        if (!options.contains(name)) {
+            return deflt;
+        }
+        return Integer.parseInt(options.getFirst(name));
+    }
+
+    /** AI settings given to each session. */
+    private final Controller _settings;
+    /** Pool on which all sessions run their AI searches. */
+    private final ExecutorService _searchPool;
+    /** Executor on which sessions run. */
+    private final ExecutorService _sessions;
+}
@@ -233,6 +233,23 @@ final class Square {
         }
     }
 
+    /** ROOK_INDICES[i][d] holds the indices of the squares in
+     *  ROOK_SQUARES[i][d], in the same order, for move generators that
+     *  work on square indices rather than Squares. */
+    static final int[][][] ROOK_INDICES = new int[SQUARES.length][4][];
+
+    static {
+        for (int i = 0; i < SQUARES.length; i += 1) {
+            for (int d = 0; d < DIR.length; d += 1) {
+                SqList L = ROOK_SQUARES[i][d];
+                ROOK_INDICES[i][d] = new int[L.size()];
+                for (int k = 0; k < L.size(); k += 1) {
+                    ROOK_INDICES[i][d][k] = L.get(k).index();
+                }
+            }
+        }
+    }
+
     /** My index position. */
     private final int _index;
 
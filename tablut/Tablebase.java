@@ -0,0 +1,414 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static tablut.Board.MAX_MOVES;
+import static tablut.Piece.*;
+import static tablut.Square.*;
+import static tablut.Utils.error;
+
+/** Endgame tablebases: for every position with the king, D defenders and
+ *  A attackers (for small D and A), whether the side to move wins or
+ *  loses with best play, and in how many moves.  Each such material
+ *  configuration has its own table of one byte per position, stored as
+ *  a gzip-compressed file in a directory and loaded only when a position
+ *  with that material is first probed.  Loading stops once the tables in
+ *  memory would exceed a size limit, so memory stays bounded; positions
+ *  whose table did not fit are simply not found.
+ *
+ *  <p>A table entry V means: the side to move wins in V moves (V &gt; 0),
+ *  loses in -V moves (V &lt; 0), or cannot force a result (V == 0).  Move
+ *  counts include the final, winning move.  The tables follow the rules as
+ *  Board plays them (captures, the throne, and the king winning on the
+ *  edge), except that they ignore move limits and repeated positions, and
+ *  count a side with no legal moves as having lost (as if the opponent's
+ *  next move won).
+ *
+ *  <p>Tables are built by retrograde analysis, working back from won and
+ *  lost positions one move at a time: in pass p, a position is won in p
+ *  moves if some move leads to a position lost in p - 1, and lost in p
+ *  moves if every move leads to a position already won.  Captures lead to
+ *  tables with less material, so those are built first.  To build the
+ *  tables for up to D defenders and A attackers, run TablebaseMaker.
+ *  Tables grow by a factor of about 80 with each extra piece, so only
+ *  the smallest configurations fit in the memory of one machine: 1
+ *  defender and 2 attackers take 42 MB, but 1 defender and 3 attackers,
+ *  or 2 of each, would each take over a gigabyte.
+ *  @author Citlalli Villarreal
+ */
+final class Tablebase {
+
+    /** Default limits on the material covered when building. */
+    static final int DEFAULT_DEFENDERS = 1, DEFAULT_ATTACKERS = 2;
+    /** Largest numbers of defenders and attackers supported. */
+    static final int MAX_DEFENDERS = 1, MAX_ATTACKERS = 2;
+    /** Largest table, in bytes, that build will make. */
+    static final long MAX_TABLE_BYTES = 64L << 20;
+    /** Longest win or loss recorded, in moves. */
+    static final int MAX_PLIES = Byte.MAX_VALUE;
+    /** Default limit on the bytes of tables loaded into memory. */
+    static final long DEFAULT_MEMORY = 64L << 20;
+    /** Value returned by probe for positions not covered by any table. */
+    static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    /** Tables in the directory named DIR, loading at most MAXBYTES bytes
+     *  of them into memory. */
+    Tablebase(String dir, long maxBytes) {
+        _dir = dir;
+        _budget = maxBytes;
+    }
+
+    /** Return the table entry (see the class comment) for BOARD, or
+     *  NOT_FOUND if it has no table, or the game is already over. */
+    int probe(Board board) {
+        Square king = board.kingPosition();
+        if (board.winner() != null || king == null || king.isEdge()) {
+            return NOT_FOUND;
+        }
+        int defenders = board.pieceCount(WHITE) - 1,
+            attackers = board.pieceCount(BLACK);
+        byte[] table = table(defenders, attackers);
+        if (table == null) {
+            return NOT_FOUND;
+        }
+        return table[index(board)];
+    }
+
+    /** Return a best move in BOARD according to the tables: the quickest
+     *  win if there is one, else the slowest loss if every move loses.
+     *  Returns null if the best the tables can promise is a draw (which is
+     *  better left to the search, since the tables know nothing of
+     *  repetitions), or if BOARD or one of the positions its moves lead
+     *  to is not in the tables. */
+    Move bestMove(Board board) {
+        if (probe(board) == NOT_FOUND) {
+            return null;
+        }
+        Board b = new Board(board);
+        int[] moves = new int[MAX_MOVES];
+        int n = b.legalMoves(b.turn(), moves);
+        int best = 0, bestRank = Integer.MIN_VALUE;
+        for (int k = 0; k < n; k += 1) {
+            Piece mover = b.turn();
+            b.makeMove(moves[k]);
+            int rank;
+            if (b.winner() != null) {
+                rank = b.winner() == mover ? 2 * MAX_PLIES : -2 * MAX_PLIES;
+            } else {
+                int v = probe(b);
+                if (v == NOT_FOUND) {
+                    return null;
+                }
+                rank = v < 0 ? 2 * MAX_PLIES + v : v > 0 ? -2 * MAX_PLIES + v
+                    : 0;
+            }
+            b.undo();
+            if (rank > bestRank) {
+                best = moves[k];
+                bestRank = rank;
+            }
+        }
+        return best == 0 || bestRank == 0 ? null : Move.unpack(best);
+    }
+
+    /** Return the table for DEFENDERS defenders and ATTACKERS attackers,
+     *  loading it if need be, or null if there is none or it does not fit
+     *  in memory. */
+    private synchronized byte[] table(int defenders, int attackers) {
+        if (defenders < 0 || defenders > MAX_DEFENDERS || attackers < 0
+            || attackers > MAX_ATTACKERS) {
+            return null;
+        }
+        if (!_tried[defenders][attackers]) {
+            _tried[defenders][attackers] = true;
+            long size = size(defenders, attackers);
+            File file = new File(_dir, fileName(defenders, attackers));
+            if (size <= _budget && file.exists()) {
+                try (InputStream in = new GZIPInputStream(
+                         new BufferedInputStream(new FileInputStream(file)))) {
+                    byte[] table = in.readNBytes((int) size);
+                    if (table.length == size) {
+                        _tables[defenders][attackers] = table;
+                        _budget -= size;
+                    }
+                } catch (IOException excp) {
+                    /* Treat an unreadable table as missing. */
+                }
+            }
+        }
+        return _tables[defenders][attackers];
+    }
+
+    /** Return the name of the file for DEFENDERS defenders and ATTACKERS
+     *  attackers. */
+    static String fileName(int defenders, int attackers) {
+        return String.format("tb-d%d-a%d.gz", defenders, attackers);
+    }
+
+    /** Return the number of entries in the table for DEFENDERS defenders
+     *  and ATTACKERS attackers.  Entries are indexed by side to move, king
+     *  square, and the sets of defender and attacker squares, including
+     *  some impossible ones with two pieces on a square. */
+    static long size(int defenders, int attackers) {
+        return 2L * NUM_SQUARES * BINOM[NUM_SQUARES][defenders]
+            * BINOM[NUM_SQUARES][attackers];
+    }
+
+    /** Return the index of BOARD's position in its table. */
+    static int index(Board board) {
+        int[] white = new int[MAX_DEFENDERS + 1],
+            black = new int[MAX_ATTACKERS + 1];
+        int defenders = board.squares(WHITE, white),
+            attackers = board.squares(BLACK, black);
+        return index(board.turn(), board.kingPosition().index(),
+                     white, defenders, black, attackers);
+    }
+
+    /** Return the table index of the position with TURN to move, the king
+     *  on the square with index KING, defenders on the first DEFENDERS
+     *  squares in WHITE and attackers on the first ATTACKERS squares in
+     *  BLACK, both in increasing order.  No table exceeds
+     *  MAX_TABLE_BYTES, so the index fits in an int. */
+    static int index(Piece turn, int king, int[] white, int defenders,
+                     int[] black, int attackers) {
+        long i = (turn == BLACK ? 1 : 0) * NUM_SQUARES + king;
+        i = i * BINOM[NUM_SQUARES][defenders] + rank(white, defenders);
+        i = i * BINOM[NUM_SQUARES][attackers] + rank(black, attackers);
+        return (int) i;
+    }
+
+    /** Return the rank of the set of the first K square indices in SQUARES,
+     *  in increasing order, among all K-element sets of squares. */
+    private static long rank(int[] squares, int k) {
+        long r = 0;
+        for (int i = 0; i < k; i += 1) {
+            r += BINOM[squares[i]][i + 1];
+        }
+        return r;
+    }
+
+    /** Builds the table for one material configuration. */
+    private static class Builder {
+
+        /** A builder for DEFENDERS defenders and ATTACKERS attackers, where
+         *  TABLES[d][a] holds the finished tables for less material. */
+        Builder(int defenders, int attackers, byte[][][] tables) {
+            _defenders = defenders;
+            _attackers = attackers;
+            _tables = tables;
+            _table = new byte[(int) size(defenders, attackers)];
+            tables[defenders][attackers] = _table;
+        }
+
+        /** Fill in my table and return it. */
+        byte[] build() {
+            int lastChange = 0;
+            for (int p = 1; p <= MAX_PLIES && p <= lastChange + 2; p += 1) {
+                _pass = p;
+                if (forEachPosition()) {
+                    lastChange = p;
+                }
+            }
+            return _table;
+        }
+
+        /** Apply pass _pass to every position of my material that is not
+         *  yet decided, returning true iff any was decided. */
+        private boolean forEachPosition() {
+            boolean changed = false;
+            int[] white = new int[MAX_DEFENDERS],
+                black = new int[MAX_ATTACKERS];
+            for (Piece turn : SIDES) {
+                for (int king = 0; king < NUM_SQUARES; king += 1) {
+                    if (sq(king).isEdge()) {
+                        continue;
+                    }
+                    firstCombination(white, _defenders);
+                    do {
+                        firstCombination(black, _attackers);
+                        do {
+                            changed |= decide(turn, king, white, black);
+                        } while (nextCombination(black, _attackers));
+                    } while (nextCombination(white, _defenders));
+                }
+            }
+            return changed;
+        }
+
+        /** Try to decide the position with TURN to move, the king on KING,
+         *  and the ordinary pieces on the squares in WHITE and BLACK, in
+         *  the current pass.  Return true iff it was decided. */
+        private boolean decide(Piece turn, int king, int[] white,
+                               int[] black) {
+            int i = index(turn, king, white, _defenders, black, _attackers);
+            if (_table[i] != 0 || !setUp(turn, king, white, black)) {
+                return false;
+            }
+            boolean winPass = _pass % 2 == 1;
+            int n = _board.legalMoves(turn, _moves);
+            for (int k = 0; k < n; k += 1) {
+                _board.makeMove(_moves[k]);
+                boolean won = _board.winner() == turn;
+                int v = won ? 0 : lookUp();
+                _board.undo();
+                if (winPass && (won ? _pass == 1 : v == 1 - _pass)) {
+                    _table[i] = (byte) _pass;
+                    return true;
+                }
+                if (!winPass && (won || v <= 0 || v >= _pass)) {
+                    return false;
+                }
+            }
+            if (winPass) {
+                return false;
+            }
+            _table[i] = (byte) -_pass;
+            return true;
+        }
+
+        /** Return the entry for the current position of _board, which
+         *  has my material or, after a capture, less. */
+        private int lookUp() {
+            int defenders = _board.pieceCount(WHITE) - 1,
+                attackers = _board.pieceCount(BLACK);
+            return _tables[defenders][attackers][index(_board)];
+        }
+
+        /** Set _board to the position with TURN to move, the king on KING
+         *  and ordinary pieces on WHITE and BLACK, returning false if two
+         *  pieces would share a square. */
+        private boolean setUp(Piece turn, int king, int[] white,
+                              int[] black) {
+            _board.clear(turn);
+            _board.put(KING, sq(king));
+            for (int k = 0; k < _defenders; k += 1) {
+                if (_board.get(sq(white[k])) != EMPTY) {
+                    return false;
+                }
+                _board.put(WHITE, sq(white[k]));
+            }
+            for (int k = 0; k < _attackers; k += 1) {
+                if (_board.get(sq(black[k])) != EMPTY) {
+                    return false;
+                }
+                _board.put(BLACK, sq(black[k]));
+            }
+            return true;
+        }
+
+        /** Numbers of defenders and attackers. */
+        private final int _defenders, _attackers;
+        /** Finished tables, and mine, by material. */
+        private final byte[][][] _tables;
+        /** My table. */
+        private final byte[] _table;
+        /** Current pass. */
+        private int _pass;
+        /** Board on which positions are set up. */
+        private final Board _board = new Board();
+        /** Move buffer. */
+        private final int[] _moves = new int[MAX_MOVES];
+    }
+
+    /** Set the first K entries of C to the first K-element set of squares,
+     *  0, 1, ..., K - 1. */
+    private static void firstCombination(int[] c, int k) {
+        for (int i = 0; i < k; i += 1) {
+            c[i] = i;
+        }
+    }
+
+    /** Advance the first K entries of C, an increasing set of square
+     *  indices, to the next such set in colexicographic order, returning
+     *  false (and leaving C unspecified) if there is none. */
+    private static boolean nextCombination(int[] c, int k) {
+        for (int i = 0; i < k; i += 1) {
+            int limit = i + 1 < k ? c[i + 1] : NUM_SQUARES;
+            if (c[i] + 1 < limit) {
+                c[i] += 1;
+                firstCombination(c, i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Build the tables for up to MAXDEFENDERS defenders and MAXATTACKERS
+     *  attackers and write them to directory DIR, reporting each table's
+     *  size and build time on LOG unless it is null.  Checks, before
+     *  building anything, that the limits are supported and that no table
+     *  would exceed MAX_TABLE_BYTES. */
+    static void build(File dir, int maxDefenders, int maxAttackers,
+                      PrintStream log) throws IOException {
+        if (maxDefenders < 0 || maxDefenders > MAX_DEFENDERS
+            || maxAttackers < 0 || maxAttackers > MAX_ATTACKERS) {
+            throw error("at most %d defenders and %d attackers",
+                        MAX_DEFENDERS, MAX_ATTACKERS);
+        }
+        for (int d = 0; d <= maxDefenders; d += 1) {
+            for (int a = 0; a <= maxAttackers; a += 1) {
+                if (size(d, a) > MAX_TABLE_BYTES) {
+                    throw error("table for %d defenders and %d attackers"
+                                + " is too large", d, a);
+                }
+            }
+        }
+        dir.mkdirs();
+        byte[][][] tables = new byte[MAX_DEFENDERS + 1][MAX_ATTACKERS + 1][];
+        for (int d = 0; d <= maxDefenders; d += 1) {
+            for (int a = 0; a <= maxAttackers; a += 1) {
+                long start = System.currentTimeMillis();
+                byte[] table = new Builder(d, a, tables).build();
+                File file = new File(dir, fileName(d, a));
+                try (OutputStream out = new GZIPOutputStream(
+                         new BufferedOutputStream(
+                             new FileOutputStream(file)))) {
+                    out.write(table);
+                }
+                if (log != null) {
+                    log.printf("%s: %d entries, %d bytes, %d ms%n",
+                               file, table.length, file.length(),
+                               System.currentTimeMillis() - start);
+                }
+            }
+        }
+    }
+
+    /** The two sides, in the order of their table sections. */
+    private static final Piece[] SIDES = { WHITE, BLACK };
+
+    /** BINOM[n][k] is n choose k, for k up to MAX_ATTACKERS. */
+    private static final long[][] BINOM =
+        new long[NUM_SQUARES + 1][MAX_ATTACKERS + 2];
+
+    static {
+        for (int n = 0; n <= NUM_SQUARES; n += 1) {
+            BINOM[n][0] = 1;
+            for (int k = 1; k < BINOM[n].length; k += 1) {
+                BINOM[n][k] =
+                    n == 0 ? 0 : BINOM[n - 1][k - 1] + BINOM[n - 1][k];
+            }
+        }
+    }
+
+    /** Directory holding the table files. */
+    private final String _dir;
+    /** Bytes of tables that may still be loaded. */
+    private long _budget;
+    /** Loaded tables, by numbers of defenders and attackers. */
+    private final byte[][][] _tables =
+        new byte[MAX_DEFENDERS + 1][MAX_ATTACKERS + 1][];
+    /** True for each table whose loading has been attempted. */
+    private final boolean[][] _tried =
+        new boolean[MAX_DEFENDERS + 1][MAX_ATTACKERS + 1];
+}
@@ -0,0 +1,46 @@
+package tablut;
+
+import java.io.File;
+import java.io.IOException;
+
+import ucb.util.CommandArgs;
+
+/** Builds endgame tablebases (see Tablebase):
+ *  <pre>
+ *      java tablut.TablebaseMaker DIR [--defenders=D] [--attackers=A]
+ *  </pre>
+ *  writes to directory DIR the tables for up to D defenders and A
+ *  attackers (by default, and at most, Tablebase.MAX_DEFENDERS and
+ *  Tablebase.MAX_ATTACKERS).
+ *  @author Citlalli Villarreal
+ */
+final class TablebaseMaker {
+
+    /** Build and write the tables as described in the class comment,
+     *  according to ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--defenders=(\\d+){0,1}"
+                            + " --attackers=(\\d+){0,1} --={1}", args);
+        if (!options.ok() || !options.contains("--")) {
+            Utils.fatal("Usage: java tablut.TablebaseMaker DIR"
+                        + " [--defenders=N] [--attackers=N]%n");
+        }
+        try {
+            int maxDefenders = options.contains("--defenders")
+                ? Integer.parseInt(options.getFirst("--defenders"))
+                : Tablebase.DEFAULT_DEFENDERS;
+            int maxAttackers = options.contains("--attackers")
+                ? Integer.parseInt(options.getFirst("--attackers"))
+                : Tablebase.DEFAULT_ATTACKERS;
+            Tablebase.build(new File(options.getFirst("--")), maxDefenders,
+                            maxAttackers, System.out);
+        } catch (NumberFormatException excp) {
+            Utils.fatal("number too large%n");
+        } catch (IllegalArgumentException excp) {
+            Utils.fatal("%s%n", excp.getMessage());
+        } catch (IOException excp) {
+            Utils.fatal("Could not write tables: %s%n", excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Piece.*;
+
+/** A headless self-play tournament: plays many games between two AIs,
+ *  several at a time on a pool of threads, and reports how often each side
+ *  won, how long games lasted, how fast the AIs searched and how long
+ *  they took per move.  Games are played on Boards and AIs built
+ *  directly, with no text input or display.  Each game starts with a few
+ *  random moves chosen from a seed derived from the tournament seed and
+ *  the game number, so that the games differ but the tournament can be
+ *  repeated exactly (provided the AIs are not timed).
+ *
+ *  <p>Usage:
+ *  <pre>
+ *      java tablut.Tournament [--games=N] [--threads=N] [--seed=N]
+ *          [--time=MS] [--hash=MB] [--limit=N] [--white=FILE]
+ *          [--black=FILE] [--lmr=SIDES] [--nullmove=SIDES]
+ *  </pre>
+ *  where --white and --black give weight files (see FeatureEvaluator)
+ *  for the two sides, --limit is the move limit of each game (White
+ *  wins when it is reached, as with the "limit" command), and --lmr and
+ *  --nullmove turn on late-move reductions and null-move pruning for
+ *  SIDES: white, black or both.  Giving a search feature to one side only
+ *  measures what it is worth.
+ *  @author Citlalli Villarreal
+ */
+final class Tournament {
+
+    /** Default number of games. */
+    static final int DEFAULT_GAMES = 100;
+    /** Default move limit per game. */
+    static final int DEFAULT_LIMIT = 100;
+    /** Default number of random moves at the start of each game. */
+    static final int OPENING_MOVES = 4;
+
+    /** A tournament of GAMES games with move limit LIMIT, seeded by SEED,
+     *  in which the AIs for WHITE and BLACK use the settings of the
+     *  controllers WHITESETTINGS and BLACKSETTINGS. */
+    Tournament(int games, int limit, long seed, Controller whiteSettings,
+               Controller blackSettings) {
+        this(games, limit, seed, OPENING_MOVES, whiteSettings,
+             blackSettings);
+    }
+
+    /** A tournament as for the other constructor, but starting each game
+     *  with OPENINGMOVES random moves. */
+    Tournament(int games, int limit, long seed, int openingMoves,
+               Controller whiteSettings, Controller blackSettings) {
+        _games = games;
+        _openingMoves = openingMoves;
+        _limit = limit;
+        _seed = seed;
+        _whiteSettings = whiteSettings;
+        _blackSettings = blackSettings;
+    }
+
+    /** The outcome of one game. */
+    static class Result {
+        /** The winning side. */
+        private Piece _winner;
+        /** Number of moves played. */
+        private int _length;
+        /** Positions searched by the AIs. */
+        private long _nodes;
+        /** Time the AIs spent searching, in nanoseconds. */
+        private long _searchNanos;
+        /** Time taken by each AI move, in nanoseconds. */
+        private long[] _latencies = new long[0];
+        /** The moves of the game, packed (see Move.pack). */
+        private int[] _moves = new int[0];
+
+        /** Return the winning side. */
+        Piece winner() {
+            return _winner;
+        }
+
+        /** Return the moves of the game, in order, packed. */
+        int[] moves() {
+            return _moves;
+        }
+    }
+
+    /** Play all my games, THREADS at a time, and return a report of the
+     *  results. */
+    String run(int threads) {
+        return report(playAll(threads));
+    }
+
+    /** Play all my games, THREADS at a time, and return their results in
+     *  order of game number. */
+    List<Result> playAll(int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> games = new ArrayList<>();
+        for (int g = 0; g < _games; g += 1) {
+            long gameSeed = _seed + g;
+            games.add(pool.submit(() -> play(gameSeed)));
+        }
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> game : games) {
+                results.add(game.get());
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    /** Play one game whose opening moves are chosen with seed SEED, and
+     *  return its result. */
+    Result play(long seed) {
+        Controller white = copySettings(_whiteSettings),
+            black = copySettings(_blackSettings);
+        Board board = new Board();
+        board.setMoveLimit(_limit);
+        Random random = new Random(seed);
+        int[] moves = new int[Board.MAX_MOVES];
+        int[] played = new int[2 * _limit];
+        for (int k = 0; k < _openingMoves && board.winner() == null;
+             k += 1) {
+            int n = board.legalMoves(board.turn(), moves);
+            if (n == 0) {
+                break;
+            }
+            played[k] = moves[random.nextInt(n)];
+            board.makeMove(played[k]);
+        }
+        AI whiteAI = new AI(WHITE, white), blackAI = new AI(BLACK, black);
+        Result result = new Result();
+        long[] latencies = new long[2 * _limit];
+        int numMoves = 0;
+        while (board.winner() == null) {
+            if (!board.hasMove(board.turn())) {
+                result._winner = board.turn().opponent();
+                break;
+            }
+            boolean whiteToMove = board.turn() == WHITE;
+            AI ai = whiteToMove ? whiteAI : blackAI;
+            (whiteToMove ? white : black).board().copy(board);
+            long start = System.nanoTime();
+            Move move = ai.findMove();
+            long elapsed = System.nanoTime() - start;
+            if (numMoves == latencies.length) {
+                latencies = Arrays.copyOf(latencies, 2 * numMoves);
+            }
+            latencies[numMoves] = elapsed;
+            numMoves += 1;
+            result._searchNanos += elapsed;
+            result._nodes += ai.nodes();
+            if (board.moveCount() == played.length) {
+                played = Arrays.copyOf(played, 2 * played.length);
+            }
+            played[board.moveCount()] = move.packed();
+            board.makeMove(move);
+        }
+        if (result._winner == null) {
+            result._winner = board.winner();
+        }
+        result._length = board.moveCount();
+        result._latencies = Arrays.copyOf(latencies, numMoves);
+        result._moves = Arrays.copyOf(played, board.moveCount());
+        return result;
+    }
+
+    /** Return a new controller with the same AI settings as MODEL, to
+     *  hold the position for one AI in one game. */
+    private static Controller copySettings(Controller model) {
+        Controller result = newController();
+        result.copySettings(model);
+        return result;
+    }
+
+    /** Return a controller that displays and reports nothing, used only
+     *  to hold AI settings and a position. */
+    static Controller newController() {
+        return new Controller(new NullView(), null, new SilentReporter(),
+                              new TextPlayer(), new AI(), false);
+    }
+
+    /** Return a summary of RESULTS. */
+    private static String report(List<Result> results) {
+        int whiteWins = 0, totalLength = 0, numMoves = 0;
+        long nodes = 0, nanos = 0;
+        for (Result r : results) {
+            whiteWins += r._winner == WHITE ? 1 : 0;
+            totalLength += r._length;
+            nodes += r._nodes;
+            nanos += r._searchNanos;
+            numMoves += r._latencies.length;
+        }
+        long[] latencies = new long[numMoves];
+        int k = 0;
+        for (Result r : results) {
+            System.arraycopy(r._latencies, 0, latencies, k,
+                             r._latencies.length);
+            k += r._latencies.length;
+        }
+        Arrays.sort(latencies);
+        int games = Math.max(1, results.size());
+        int blackWins = results.size() - whiteWins;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("Games: %d  White wins: %d (%.1f%%)"
+                                 + "  Black wins: %d (%.1f%%)%n",
+                                 results.size(), whiteWins,
+                                 PERCENT * whiteWins / games, blackWins,
+                                 PERCENT * blackWins / games));
+        out.append(String.format("Average game length: %.1f moves%n",
+                                 (double) totalLength / games));
+        out.append(String.format("Nodes/sec: %.0f%n",
+                                 nodes * NANOS_PER_SECOND
+                                 / Math.max(1, nanos)));
+        out.append(String.format("Move latency (ms): p50 %.2f  p90 %.2f"
+                                 + "  p99 %.2f  max %.2f%n",
+                                 percentile(latencies, P50),
+                                 percentile(latencies, P90),
+                                 percentile(latencies, P99),
+                                 percentile(latencies, PERCENT)));
+        return out.toString();
+    }
+
+    /** Return the P-th percentile of the sorted nanosecond times SORTED,
+     *  in milliseconds (0 if there are none). */
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int k = (int) Math.ceil(p / PERCENT * sorted.length) - 1;
+        k = Math.max(0, Math.min(sorted.length - 1, k));
+        return sorted[k] / NANOS_PER_MILLI;
+    }
+
+    /** A Reporter that discards everything. */
+    static class SilentReporter implements Reporter {
+        @Override
+        public void reportError(String format, Object... args) {
+        }
+
+        @Override
+        public void reportNote(String format, Object... args) {
+        }
+
+        @Override
+        public void reportMove(Move move) {
+        }
+    }
+
+    /** Run a tournament as described in the class comment, according to
+     *  ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games=(\\d+){0,1} --threads=(\\d+){0,1}"
+                            + " --seed=(\\d+){0,1} --time=(\\d+){0,1}"
+                            + " --hash=(\\d+){0,1} --limit=(\\d+){0,1}"
+                            + " --white={0,1} --black={0,1}"
+                            + " --lmr=(white|black|both){0,1}"
+                            + " --nullmove=(white|black|both){0,1}", args);
+        if (!options.ok()) {
+            Utils.fatal("Usage: java tablut.Tournament [--games=N]"
+                        + " [--threads=N] [--seed=N] [--time=MS]"
+                        + " [--hash=MB] [--limit=N] [--white=FILE]"
+                        + " [--black=FILE] [--lmr=SIDES]"
+                        + " [--nullmove=SIDES]%n");
+        }
+        try {
+            int games = intOption(options, "--games", DEFAULT_GAMES);
+            int threads = intOption(options, "--threads",
+                                    Runtime.getRuntime()
+                                    .availableProcessors());
+            int limit = intOption(options, "--limit", DEFAULT_LIMIT);
+            long seed = options.contains("--seed")
+                ? Long.parseLong(options.getFirst("--seed")) : 0;
+            Controller white = newController(), black = newController();
+            for (Controller c : new Controller[] { white, black }) {
+                if (options.contains("--time")) {
+                    c.setMoveTime(Long.parseLong(options.getFirst("--time")));
+                }
+                if (options.contains("--hash")) {
+                    c.setTableSize(intOption(options, "--hash", 0));
+                }
+            }
+            white.setLateMoveReductions(forSide(options, "--lmr", "white"));
+            black.setLateMoveReductions(forSide(options, "--lmr", "black"));
+            white.setNullMove(forSide(options, "--nullmove", "white"));
+            black.setNullMove(forSide(options, "--nullmove", "black"));
+            if (options.contains("--white")) {
+                white.setEvaluator(
+                    FeatureEvaluator.load(options.getFirst("--white")));
+            }
+            if (options.contains("--black")) {
+                black.setEvaluator(
+                    FeatureEvaluator.load(options.getFirst("--black")));
+            }
+            Tournament tournament =
+                new Tournament(games, limit, seed, white, black);
+            System.out.print(tournament.run(Math.max(1, threads)));
+        } catch (IllegalArgumentException excp) {
+            Utils.fatal("%s%n", excp.getMessage());
+        }
+    }
+
+    /** Return the value of integer option NAME in OPTIONS, or DEFLT if it
+     *  is absent. */
+    private static int intOption(CommandArgs options, String name,
+                                 int deflt) {
+        if (!options.contains(name)) {
+            return deflt;
+        }
+        return Integer.parseInt(options.getFirst(name));
+    }
+
+    /** Return true iff option NAME in OPTIONS names SIDE or "both". */
+    private static boolean forSide(CommandArgs options, String name,
+                                   String side) {
+        if (!options.contains(name)) {
+            return false;
+        }
+        String sides = options.getFirst(name);
+        return sides.equals(side) || sides.equals("both");
+    }
+
+    /** Percentages and percentiles. */
+    private static final double PERCENT = 100.0, P50 = 50.0, P90 = 90.0,
+        P99 = 99.0;
+    /** Nanoseconds per second and per millisecond. */
+    private static final double NANOS_PER_SECOND = 1e9,
+        NANOS_PER_MILLI = 1e6;
+
+    /** Number of games to play. */
+    private final int _games;
+    /** Number of random moves at the start of each game. */
+    private final int _openingMoves;
+    /** Move limit of each game. */
+    private final int _limit;
+    /** Seed from which the game seeds are derived. */
+    private final long _seed;
+    /** Settings for the white and black AIs. */
+    private final Controller _whiteSettings, _blackSettings;
+}
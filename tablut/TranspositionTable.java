@@ -0,0 +1,149 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A fixed-size table of search results, indexed by position key (see
+ *  Board.hashKey).  The table is an array of two-slot buckets; the first
+ *  slot of a bucket keeps the deepest result stored there during the
+ *  current search, and the second slot always takes the newest result that
+ *  did not go into the first.  All entries live in parallel primitive
+ *  arrays, so probing and storing allocate nothing.
+ *  @author Citlalli Villarreal
+ */
+final class TranspositionTable {
+
+    /** Bound types: the stored score is exact, a lower bound on the true
+     *  value, or an upper bound on it. */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** Bytes used by one slot: the key, the score and the packed info. */
+    static final int SLOT_BYTES = 16;
+
+    /** A table using about MEGABYTES megabytes (at least one bucket). */
+    TranspositionTable(int megabytes) {
+        long slots = ((long) megabytes << MB_SHIFT) / SLOT_BYTES;
+        int buckets = 1;
+        while (2L * buckets * 2 <= slots && buckets < MAX_BUCKETS) {
+            buckets *= 2;
+        }
+        _mask = buckets - 1;
+        _keys = new long[2 * buckets];
+        _scores = new int[2 * buckets];
+        _info = new int[2 * buckets];
+        _megabytes = megabytes;
+    }
+
+    /** Return the size in megabytes requested when I was created. */
+    int megabytes() {
+        return _megabytes;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_info, 0);
+        _generation = 0;
+    }
+
+    /** Note the start of a new search.  Entries from earlier searches stay
+     *  usable, but no longer protect their depth-preferred slots. */
+    void newSearch() {
+        _generation = (_generation + 1) & GENERATION_MASK;
+        if (_generation == 0) {
+            _generation = 1;
+        }
+    }
+
+    /** Return the slot holding an entry for KEY, or -1 if there is
+     *  none. */
+    int probe(long key) {
+        int slot = bucket(key);
+        if (_info[slot] != 0 && _keys[slot] == key) {
+            return slot;
+        }
+        slot += 1;
+        if (_info[slot] != 0 && _keys[slot] == key) {
+            return slot;
+        }
+        return -1;
+    }
+
+    /** Return the search depth of the entry in SLOT. */
+    int depth(int slot) {
+        return (_info[slot] >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the bound type (EXACT, LOWER or UPPER) of the entry in
+     *  SLOT. */
+    int bound(int slot) {
+        return (_info[slot] >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the score of the entry in SLOT. */
+    int score(int slot) {
+        return _scores[slot];
+    }
+
+    /** Return the best move (packed, see Move.pack) of the entry in SLOT,
+     *  or 0 if none was recorded. */
+    int move(int slot) {
+        return _info[slot] & MOVE_MASK;
+    }
+
+    /** Record that the position with key KEY, searched to DEPTH, has
+     *  SCORE, which is a bound of type BOUND, and best move MOVE (packed,
+     *  or 0 if unknown). */
+    void store(long key, int depth, int bound, int score, int move) {
+        int slot = bucket(key);
+        int old = _info[slot];
+        if (old != 0 && _keys[slot] != key
+            && ((old >>> GENERATION_SHIFT) & GENERATION_MASK) == _generation
+            && ((old >>> DEPTH_SHIFT) & DEPTH_MASK) > depth) {
+            slot += 1;
+        }
+        if (move == 0 && _info[slot] != 0 && _keys[slot] == key) {
+            move = _info[slot] & MOVE_MASK;
+        }
+        _keys[slot] = key;
+        _scores[slot] = score;
+        _info[slot] = (_generation << GENERATION_SHIFT)
+            | (Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT)
+            | (bound << BOUND_SHIFT) | (move & MOVE_MASK);
+    }
+
+    /** Return the first slot of the bucket for KEY. */
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> HALF_SHIFT)) & _mask) << 1;
+    }
+
+    /** Shift converting megabytes to bytes. */
+    private static final int MB_SHIFT = 20;
+    /** Largest number of buckets (keeps slot indices within an int). */
+    private static final int MAX_BUCKETS = 1 << 28;
+    /** Shift folding the high half of a key onto the low half. */
+    private static final int HALF_SHIFT = 32;
+
+    /** Layout of an info word: a packed move in the low bits, then the
+     *  bound type, depth and generation.  A zero word marks an empty
+     *  slot; stored entries never have generation 0. */
+    private static final int
+        MOVE_MASK = (1 << 14) - 1,
+        BOUND_SHIFT = 14,
+        BOUND_MASK = 0x3,
+        DEPTH_SHIFT = 16,
+        DEPTH_MASK = 0xff,
+        GENERATION_SHIFT = 24,
+        GENERATION_MASK = 0x7f;
+
+    /** Mask selecting a bucket number from a hashed key. */
+    private final int _mask;
+    /** The keys of the entries. */
+    private final long[] _keys;
+    /** The scores of the entries. */
+    private final int[] _scores;
+    /** The packed move, bound, depth and generation of the entries. */
+    private final int[] _info;
+    /** Current search generation, from 1 to GENERATION_MASK. */
+    private int _generation = 1;
+    /** Requested size in megabytes. */
+    private final int _megabytes;
+}
@@ -1,5 +1,10 @@
 package tablut;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 import ucb.junit.textui;
@@ -54,6 +59,36 @@ public class UnitTest {
         assertEquals(Square.sq(2, 8), board1.kingPosition());
     }
 
+    @Test
+    public void testencodedboard() {
+        Board board1 = new Board();
+        assertEquals("B---BBB-------B--------W----B---W---BBBWWKWWBBB---W"
+                     + "---B----W--------B-------BBB---",
+                     board1.encodedBoard());
+        board1.put(Piece.EMPTY, Square.sq(4, 4));
+        assertNull(board1.kingPosition());
+        board1.put(Piece.KING, Square.sq("a9"));
+        assertEquals(Piece.KING, board1.get(0, 8));
+        assertEquals(Square.sq("a9"), board1.kingPosition());
+    }
+
+    @Test
+    public void testhashkey() {
+        Board board1 = new Board();
+        Board board2 = new Board();
+        assertEquals(board1.hashKey(), board2.hashKey());
+        board1.makeMove(Square.sq("a4"), Square.sq("a2"));
+        board1.makeMove(Square.sq("e3"), Square.sq("b3"));
+        board1.makeMove(Square.sq("i6"), Square.sq("i8"));
+        board2.makeMove(Square.sq("i6"), Square.sq("i8"));
+        board2.makeMove(Square.sq("e3"), Square.sq("b3"));
+        assertNotEquals(board1.hashKey(), board2.hashKey());
+        board2.makeMove(Square.sq("a4"), Square.sq("a2"));
+        assertEquals(board1.encodedBoard(), board2.encodedBoard());
+        assertEquals(board1.hashKey(), board2.hashKey());
+        assertEquals(board1.hashKey(), new Board(board1).hashKey());
+    }
+
     @Test
     public void testget() {
         Board board1 = new Board();
@@ -101,8 +136,440 @@ public class UnitTest {
         board1.makeMove(Square.sq("e5"), Square.sq("f5"));
         board1.makeMove(Square.sq("i5"), Square.sq("g5"));
     }
-}
 
+    @Test
+    public void testundo() {
+        Board board1 = new Board();
+        String initial = board1.encodedBoard();
+        long initialKey = board1.hashKey();
+        String[] moves = { "h5-9", "e6-b", "i6-e", "f5-2", "i4-f", "g5-9",
+                           "e6-f", "e5-f", "i5-g" };
+        for (String mv : moves) {
+            board1.makeMove(Move.mv(mv));
+        }
+        assertEquals(moves.length, board1.moveCount());
+        Board board2 = new Board(board1);
+        for (int k = 0; k < moves.length; k += 1) {
+            board1.undo();
+            board2.undo();
+        }
+        assertEquals(board1.encodedBoard(), board2.encodedBoard());
+        assertEquals(initial, board1.encodedBoard());
+        assertEquals(initialKey, board1.hashKey());
+        assertEquals(Piece.BLACK, board1.turn());
+        assertEquals(0, board1.moveCount());
+        assertNull(board1.winner());
+    }
+
+    @Test
+    public void testtranspositiontable() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = 0x123456789abcdefL;
+        assertEquals(-1, table.probe(key));
+        int move = Move.mv("a4-c").packed();
+        table.store(key, 3, TranspositionTable.LOWER, 42, move);
+        int slot = table.probe(key);
+        assertTrue(slot >= 0);
+        assertEquals(3, table.depth(slot));
+        assertEquals(TranspositionTable.LOWER, table.bound(slot));
+        assertEquals(42, table.score(slot));
+        assertEquals(move, table.move(slot));
+        table.clear();
+        assertEquals(-1, table.probe(key));
+    }
+
+    @Test
+    public void testmoveorderer() {
+        Board board1 = new Board();
+        board1.put(Piece.WHITE, Square.sq("b4"));
+        board1.put(Piece.BLACK, Square.sq("c1"));
+        int capture = Move.mv("c1-4").packed();
+        int quiet = Move.mv("a6-7").packed();
+        assertTrue(board1.isTactical(capture));
+        assertFalse(board1.isTactical(quiet));
+
+        Board board2 = new Board();
+        board2.clear(Piece.WHITE);
+        board2.put(Piece.KING, Square.sq("c3"));
+        board2.put(Piece.BLACK, Square.sq("e4"));
+        board2.put(Piece.WHITE, Square.sq("e5"));
+        assertTrue(board2.isTactical(Move.mv("c3-e").packed()));
+        board2.makeMove(Move.mv("c3-e"));
+        assertEquals(Piece.EMPTY, board2.get(Square.sq("e4")));
+
+        board2.clear(Piece.WHITE);
+        board2.put(Piece.KING, Square.sq("e5"));
+        board2.put(Piece.BLACK, Square.sq("e6"));
+        board2.put(Piece.WHITE, Square.sq("a7"));
+        assertTrue(board2.isTactical(Move.mv("a7-e").packed()));
+        board2.makeMove(Move.mv("a7-e"));
+        assertEquals(Piece.EMPTY, board2.get(Square.sq("e6")));
+
+        MoveOrderer orderer = new MoveOrderer(4);
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board1.legalMoves(Piece.BLACK, moves);
+        orderer.order(board1, moves, n, 0, 1);
+        assertEquals(capture, moves[0]);
+
+        orderer.cutoff(board1, quiet, 1, 2, 0);
+        orderer.cutoff(board1, capture, 1, 2, 3);
+        n = board1.legalMoves(Piece.BLACK, moves);
+        orderer.order(board1, moves, n, 0, 1);
+        assertEquals(capture, moves[0]);
+        assertEquals(quiet, moves[1]);
+        orderer.order(board1, moves, n, quiet, 1);
+        assertEquals(quiet, moves[0]);
+        assertEquals(2, orderer.cutoffs());
+        assertEquals(1, orderer.firstMoveCutoffs());
+        assertEquals(0.5, orderer.firstMoveCutoffRate(), 1e-9);
+    }
+
+    @Test
+    public void testtimedsearch() {
+        Controller control = Tournament.newController();
+        control.board().init();
+        AI ai = new AI(Piece.BLACK, control);
+        ai.findMove();
+        int untimedDepth = ai.stats().depth();
+        control.setMoveTime(1);
+        ai = new AI(Piece.BLACK, control);
+        Move move = ai.findMove();
+        assertTrue(control.board().isLegal(move));
+        assertTrue(ai.stats().depth() >= 1);
+        assertTrue(ai.stats().depth() < untimedDepth);
+        assertTrue(ai.stats().principalVariation().startsWith(move + ""));
+    }
+
+    @Test
+    public void testthreadsagree() {
+        Controller control = Tournament.newController();
+        control.board().copy(Perft.position("h5-4 f5-2 d1-2"));
+        Move serial = new AI(Piece.WHITE, control).findMove();
+        for (int threads = 2; threads <= 4; threads += 1) {
+            control.setThreads(threads);
+            assertEquals(serial, new AI(Piece.WHITE, control).findMove());
+        }
+    }
+
+    @Test
+    public void testquiescence() {
+        Controller control = Tournament.newController();
+        Board board = control.board();
+        board.copy(Perft.position("a4-1 c5-8 i4-f e6-d"));
+        FeatureEvaluator eval = new FeatureEvaluator();
+        Move greedy = null;
+        int greedyScore = Integer.MAX_VALUE;
+        for (Move move : board.legalMoves(Piece.BLACK)) {
+            Board after = new Board(board);
+            after.makeMove(move);
+            if (eval.score(after) < greedyScore) {
+                greedy = move;
+                greedyScore = eval.score(after);
+            }
+        }
+        Board after = new Board(board);
+        after.makeMove(greedy);
+        int blacks = after.pieceCount(Piece.BLACK);
+        boolean hangs = false;
+        for (Move reply : after.legalMoves(Piece.WHITE)) {
+            Board captured = new Board(after);
+            captured.makeMove(reply);
+            hangs |= captured.pieceCount(Piece.BLACK) < blacks;
+        }
+        assertTrue(hangs);
+        Move move = new AI(Piece.BLACK, control).findMove(1);
+        assertTrue(board.isLegal(move));
+        assertNotEquals(greedy, move);
+    }
+
+    @Test
+    public void testpiececounts() {
+        Board board1 = new Board();
+        assertEquals(9, board1.pieceCount(Piece.WHITE));
+        assertEquals(16, board1.pieceCount(Piece.BLACK));
+        assertEquals(4, board1.kingEdgeDistance());
+        board1.put(Piece.WHITE, Square.sq("b4"));
+        board1.put(Piece.BLACK, Square.sq("c1"));
+        board1.makeMove(Move.mv("c1-4"));
+        assertEquals(9, board1.pieceCount(Piece.WHITE));
+        assertEquals(17, board1.pieceCount(Piece.BLACK));
+        board1.undo();
+        assertEquals(10, board1.pieceCount(Piece.WHITE));
+        board1.put(Piece.KING, Square.sq("b2"));
+        assertEquals(1, board1.kingEdgeDistance());
+        assertEquals(0, board1.kingAttackers());
+    }
+
+    @Test
+    public void testfeatureevaluator() throws java.io.IOException {
+        Board board1 = new Board();
+        FeatureEvaluator standard = new FeatureEvaluator();
+        assertEquals(9 - 16 + FeatureEvaluator.KING_EDGE_BONUS - 4,
+                     standard.score(board1));
+        FeatureEvaluator tuned = FeatureEvaluator.read(
+            new java.io.StringReader("# escape weights\n\n"
+                                     + "material 0\nkingEdge 0\n"
+                                     + "escapeRoutes 7  # per route\n"));
+        assertEquals(7, tuned.weight(FeatureEvaluator.ESCAPE_ROUTES));
+        assertEquals(0, tuned.score(board1));
+        board1.put(Piece.KING, Square.sq("c3"));
+        assertEquals(2, board1.kingEscapeRoutes());
+        assertEquals(14, tuned.score(board1));
+    }
+
+    @Test
+    public void testperft() {
+        assertNull(Perft.check());
+        Board board1 = Perft.position("h5-9 f5-8");
+        assertEquals(board1.legalMoves(board1.turn()).size(),
+                     new Perft(board1).count(1));
+        assertEquals(2, board1.moveCount());
+    }
+
+    @Test
+    public void testopeningbook() throws java.io.IOException {
+        java.io.File file = java.io.File.createTempFile("book", ".bin");
+        file.deleteOnExit();
+        Board board1 = new Board();
+        int good = Move.mv("a4-2").packed(), bad = Move.mv("d1-3").packed();
+        OpeningBook.Builder builder = new OpeningBook.Builder();
+        for (long key = 1; key <= 100; key += 1) {
+            builder.add(key * 7919, good, 1);
+        }
+        builder.add(board1.hashKey(), bad, 1);
+        builder.add(board1.hashKey(), good, 2);
+        builder.add(board1.hashKey(), Move.mv("a5-c").packed(), 0);
+        assertEquals(102, builder.write(file.getPath()));
+
+        OpeningBook book = OpeningBook.open(file.getPath());
+        assertEquals(102, book.size());
+        assertEquals(good, book.probe(board1.hashKey()));
+        assertEquals(good, book.probe(50 * 7919));
+        assertEquals(0, book.probe(3));
+        assertEquals(Move.mv("a4-2"), book.bookMove(board1));
+        board1.makeMove(Move.mv("a4-2"));
+        assertNull(book.bookMove(board1));
+    }
+
+    @Test
+    public void testtablebase() throws java.io.IOException {
+        java.io.File dir =
+            java.nio.file.Files.createTempDirectory("tb").toFile();
+        Tablebase.build(dir, 0, 1, null);
+        for (java.io.File file : dir.listFiles()) {
+            file.deleteOnExit();
+        }
+        dir.deleteOnExit();
+        Tablebase tablebase = new Tablebase(dir.getPath(), 1 << 20);
+        assertEquals(Tablebase.NOT_FOUND, tablebase.probe(new Board()));
+
+        Board board1 = new Board();
+        board1.clear(Piece.WHITE);
+        board1.put(Piece.KING, Square.sq("c3"));
+        board1.put(Piece.BLACK, Square.sq("c5"));
+        assertEquals(1, tablebase.probe(board1));
+        Move move = tablebase.bestMove(board1);
+        assertNotNull(move);
+        board1.makeMove(move);
+        assertEquals(Piece.WHITE, board1.winner());
 
+        Board board2 = new Board();
+        board2.clear(Piece.BLACK);
+        board2.put(Piece.KING, Square.sq("e5"));
+        board2.put(Piece.BLACK, Square.sq("a1"));
+        assertEquals(-2, tablebase.probe(board2));
+        assertNotNull(tablebase.bestMove(board2));
+    }
 
+    @Test
+    public void testconcurrentgames() {
+        Tournament tournament =
+            new Tournament(3, 8, 11, Tournament.newController(),
+                           Tournament.newController());
+        java.util.List<Tournament.Result> serial = tournament.playAll(1),
+            parallel = tournament.playAll(3);
+        for (int g = 0; g < serial.size(); g += 1) {
+            assertArrayEquals(serial.get(g).moves(),
+                              parallel.get(g).moves());
+            assertEquals(serial.get(g).winner(), parallel.get(g).winner());
+        }
+    }
 
+    @Test
+    public void testserversession() throws java.io.IOException {
+        Server server = new Server(Tournament.newController(), 2);
+        java.io.ByteArrayOutputStream[] outputs =
+            new java.io.ByteArrayOutputStream[2];
+        Thread[] sessions = new Thread[2];
+        for (int k = 0; k < 2; k += 1) {
+            java.io.ByteArrayOutputStream output =
+                new java.io.ByteArrayOutputStream();
+            byte[] input = ("seed 3\nmanual black\nh5-4\ndump\nundo\n"
+                            + "bogus\nthreads 8\nponder on\nperft 9\n"
+                            + "quit\n").getBytes();
+            outputs[k] = output;
+            sessions[k] = new Thread(() -> server.session(
+                new java.io.ByteArrayInputStream(input), output));
+            sessions[k].start();
+        }
+        for (Thread session : sessions) {
+            try {
+                session.join();
+            } catch (InterruptedException excp) {
+                fail("interrupted");
+            }
+        }
+        server.shutdown();
+        String transcript = outputs[0].toString();
+        assertEquals(transcript, outputs[1].toString());
+        assertTrue(transcript.startsWith(Server.GREETING));
+        assertTrue(transcript.contains("==="));
+        assertTrue(transcript.contains("Bad command: bogus"));
+        assertTrue(transcript.contains("one thread"));
+        assertTrue(transcript.contains("cannot ponder"));
+        assertTrue(transcript.contains("perft depth is at most"));
+    }
+
+    @Test
+    public void testsearchstats() {
+        Controller control = Tournament.newController();
+        AI ai = new AI(Piece.WHITE, control);
+        control.board().init();
+        Move move = ai.findMove();
+        SearchStats stats = ai.stats();
+        assertEquals(1, stats.moves());
+        assertEquals(ai.nodes(), stats.nodes());
+        assertTrue(stats.depth() > 0);
+        assertTrue(stats.evaluations() > 0 && stats.cutoffs() > 0);
+        assertEquals(Math.pow(stats.nodes(), 1.0 / stats.depth()),
+                     stats.branchingFactor(), 1e-9);
+        assertTrue(stats.toJson().contains("\"move\":\"" + move + "\""));
+        assertEquals(SearchStats.CSV_HEADER.split(",").length,
+                     stats.toCsv().split(",").length);
+
+        SearchStats total = new SearchStats();
+        total.add(stats);
+        total.add(stats);
+        assertEquals(2, total.moves());
+        assertEquals(2 * stats.nodes(), total.nodes());
+        assertEquals(stats.branchingFactor(), total.branchingFactor(), 1e-9);
+    }
+
+    @Test
+    public void testprincipalvariation() {
+        Controller control = Tournament.newController();
+        AI ai = new AI(Piece.BLACK, control);
+        control.board().copy(Perft.position("h5-4"));
+        Move move = ai.findMove();
+        String[] pv = ai.stats().principalVariation().split(" ");
+        assertEquals(move.toString(), pv[0]);
+        assertTrue(pv.length <= ai.stats().depth());
+        Board board1 = new Board(control.board());
+        for (String mv : pv) {
+            assertTrue(board1.isLegal(Move.mv(mv)));
+            board1.makeMove(Move.mv(mv));
+        }
+    }
+
+    @Test
+    public void testnullmove() {
+        Board board1 = Perft.position("h5-4 f5-2");
+        Board board2 = new Board(board1);
+        board1.makeNullMove();
+        assertEquals(Piece.WHITE, board1.turn());
+        assertNotEquals(board2.hashKey(), board1.hashKey());
+        board1.makeMove(Move.mv("f2-3"));
+        board1.undo();
+        board1.undo();
+        assertEquals(board2.toString(), board1.toString());
+        assertEquals(board2.hashKey(), board1.hashKey());
+        assertEquals(Piece.BLACK, board1.turn());
+
+        Board limited = new Board();
+        limited.setMoveLimit(3);
+        limited.makeMove(Move.mv("h5-4"));
+        limited.makeMove(Move.mv("f5-2"));
+        limited.makeNullMove();
+        assertEquals(Piece.WHITE, limited.winner());
+        limited.undo();
+        assertNull(limited.winner());
+
+        Controller control = Tournament.newController();
+        control.setLateMoveReductions(true);
+        control.setNullMove(true);
+        control.board().copy(Perft.position("h5-4 f5-2"));
+        Move move = new AI(Piece.BLACK, control).findMove();
+        assertTrue(control.board().isLegal(move));
+    }
+
+    @Test
+    public void testponder() throws InterruptedException {
+        Controller control = Tournament.newController();
+        control.setPonder(true);
+        control.setMoveTime(PONDER_TEST_TIME);
+        control.board().copy(Perft.position("h5-4"));
+        AI ai = new AI(Piece.WHITE, control);
+        Move move = Move.mv(ai.myMove());
+        String[] pv = ai.stats().principalVariation().split(" ");
+        assertEquals(move.toString(), pv[0]);
+        control.board().makeMove(move);
+        control.board().makeMove(Move.mv(pv[1]));
+        Thread.sleep(2 * PONDER_TEST_TIME);
+        Move reply = ai.findMove();
+        assertEquals(SearchStats.PONDER, ai.stats().source());
+        assertTrue(control.board().isLegal(reply));
+
+        control.setPonder(false);
+        ai.stop();
+        ai.findMove();
+        assertEquals(SearchStats.SEARCH, ai.stats().source());
+    }
+
+    @Test
+    public void testcancelsearch() throws Exception {
+        Controller control = Tournament.newController();
+        control.board().init();
+        AI ai = new AI(Piece.BLACK, control);
+        ai.findMove();
+        int fullDepth = ai.stats().depth();
+        control.setSearchDeadline(1);
+        ai = new AI(Piece.BLACK, control);
+        Move move = ai.startSearch().get();
+        assertTrue(control.board().isLegal(move));
+        assertTrue(ai.stats().depth() < fullDepth);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        control.setSearchPool(pool);
+        control.setSearchDeadline(0);
+        control.setMoveTime(CANCEL_TEST_TIME);
+        Future<Move> search = ai.startSearch();
+        ai.cancelMove();
+        move = search.get(CANCEL_TEST_TIME / 2, TimeUnit.MILLISECONDS);
+        assertTrue(control.board().isLegal(move));
+
+        search = ai.startSearch();
+        assertTrue(search.cancel(true));
+        assertEquals(1, (int) pool.submit(() -> 1)
+                     .get(CANCEL_TEST_TIME / 2, TimeUnit.MILLISECONDS));
+        pool.shutdown();
+
+        control.setSearchPool(null);
+        search = ai.startSearch();
+        assertFalse(search.isDone());
+        assertTrue(search.cancel(true));
+        assertTrue(search.isCancelled());
+        try {
+            control.setSearchDeadline(-1);
+            fail("negative deadline accepted");
+        } catch (IllegalArgumentException excp) {
+            assertEquals(0, control.searchDeadline());
+        }
+    }
+
+    /** A time budget, in milliseconds, far longer than testcancelsearch
+     *  should take. */
+    private static final long CANCEL_TEST_TIME = 60000;
+
+    /** Time budget, in milliseconds, of the AI in testponder. */
+    private static final long PONDER_TEST_TIME = 100;
+}